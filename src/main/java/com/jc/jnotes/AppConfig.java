@@ -18,16 +18,22 @@
  */
 package com.jc.jnotes;
 
+import static com.jc.jnotes.JNotesConstants.GROUP_COMMIT_INTERVAL_MILLIS;
+import static com.jc.jnotes.JNotesConstants.GROUP_COMMIT_MAX_PENDING_WRITES;
 import static com.jc.jnotes.JNotesConstants.LOCAL_STORE_NAME;
+import static com.jc.jnotes.JNotesConstants.REMOTE_TRANSPORT;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.logging.Logger;
 
 import com.jc.jnotes.dao.local.LocalNoteEntryDao;
+import com.jc.jnotes.dao.local.SearchResultCache;
 import com.jc.jnotes.dao.local.lucene.LuceneNoteEntryDao;
 import com.jc.jnotes.dao.remote.DefaultRemoteNoteEntryDao;
+import com.jc.jnotes.dao.remote.HttpClientRemoteNoteEntryDao;
 import com.jc.jnotes.dao.remote.RemoteNoteEntryDao;
 import com.jc.jnotes.helper.AlertHelper;
 import com.jc.jnotes.helper.IOHelper;
@@ -41,13 +47,15 @@ import com.jc.jnotes.service.ControllerService;
  */
 public final class AppConfig {
 
+    private static final Logger LOGGER = Logger.getLogger(AppConfig.class.getName());
+
     public static final AppConfig APP_CONFIG = new AppConfig();
 
     // Flyweight - Cached Prototype Beans
-    // Local Dao's per basePath-notebook
-    private final static Map<String, LocalNoteEntryDao> LOCAL_DAO_CACHE = new HashMap<>();
+    // Local Dao's per basePath-notebook. Each one holds its notebook's index writer, so there must never be two per notebook.
+    private final static Map<String, LocalNoteEntryDao> LOCAL_DAO_CACHE = new ConcurrentHashMap<>();
     // Remote Dao's per user-secret
-    private final static Map<String, RemoteNoteEntryDao> REMOTE_DAO_CACHE = new HashMap<>();
+    private final static Map<String, RemoteNoteEntryDao> REMOTE_DAO_CACHE = new ConcurrentHashMap<>();
 
     // Singleton beans
     private final UserPreferences userPreferences;
@@ -64,7 +72,10 @@ public final class AppConfig {
             ioHelper = new IOHelper(userPreferences);
             localDaoInvalidator = (basePath, notebook) -> {
                 String cacheKey = generateDaoCacheKey(basePath, notebook);
-                LOCAL_DAO_CACHE.remove(cacheKey);
+                LocalNoteEntryDao noteEntryDao = LOCAL_DAO_CACHE.remove(cacheKey);
+                if (noteEntryDao != null) {
+                    noteEntryDao.close();
+                }
             };
             remoteDaoInvalidator = (userId, userSecret) -> {
                 String cacheKey = generateDaoCacheKey(userId, userSecret);
@@ -100,19 +111,19 @@ public final class AppConfig {
     // Cached Prototype bean
     public LocalNoteEntryDao getLocalNoteEntryDao(String basePath, String notebook) {
         String cacheKey = generateDaoCacheKey(basePath, notebook);
-        if (LOCAL_DAO_CACHE.get(cacheKey) != null) {
-            return LOCAL_DAO_CACHE.get(cacheKey);
-        } else {
-            LocalNoteEntryDao noteEntryDao;
+        return LOCAL_DAO_CACHE.computeIfAbsent(cacheKey, (key) -> {
             try {
-                noteEntryDao = new LuceneNoteEntryDao(basePath, LOCAL_STORE_NAME, notebook);
+                LocalNoteEntryDao noteEntryDao = new LuceneNoteEntryDao(basePath, LOCAL_STORE_NAME, notebook,
+                        GROUP_COMMIT_INTERVAL_MILLIS, GROUP_COMMIT_MAX_PENDING_WRITES);
+                noteEntryDao.addChangeListener(controllerService::onChange);
+                // Not computeIfAbsent: reading info must not recreate the index of a deleted or renamed notebook
+                noteEntryDao.setCurrentDaoLookup(() -> LOCAL_DAO_CACHE.get(key));
+                return noteEntryDao;
             } catch (IOException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
             }
-            LOCAL_DAO_CACHE.put(cacheKey, noteEntryDao);
-            return noteEntryDao;
-        }
+        });
     }
     
     // Cached Prototype bean
@@ -121,7 +132,12 @@ public final class AppConfig {
         if (REMOTE_DAO_CACHE.get(cacheKey) != null) {
             return REMOTE_DAO_CACHE.get(cacheKey);
         } else {
-            RemoteNoteEntryDao noteEntryDao = new DefaultRemoteNoteEntryDao(userId, userSecret);
+            RemoteNoteEntryDao noteEntryDao;
+            if ("httpclient".equalsIgnoreCase(REMOTE_TRANSPORT)) {
+                noteEntryDao = new HttpClientRemoteNoteEntryDao(userId, userSecret);
+            } else {
+                noteEntryDao = new DefaultRemoteNoteEntryDao(userId, userSecret);
+            }
             REMOTE_DAO_CACHE.put(cacheKey, noteEntryDao);
             return noteEntryDao;
         }
@@ -136,10 +152,19 @@ public final class AppConfig {
     }
 
     /**
-     * Do all cleanup activity here
+     * Do all cleanup activity here. Closing the local Dao's commits their pending writes.
      */
     public void close() {
-        
+        SearchResultCache<?> searchResultCache = controllerService.getSearchResultCache();
+        LOGGER.info(() -> "Search result cache hits: " + searchResultCache.getHits() + " misses: " + searchResultCache.getMisses());
+        LOCAL_DAO_CACHE.values().forEach((noteEntryDao) -> {
+            try {
+                noteEntryDao.close();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+        LOCAL_DAO_CACHE.clear();
     }
 
 }
@@ -30,6 +30,17 @@ public final class JNotesConstants {
     public static final String DEFAULT_NOTEBOOK = "default";
     public static final DateTimeFormatter DATETIME_DISPLAY_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
     public static final DateTimeFormatter DATETIME_EXPORT_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+    public static final int MAX_SEARCH_RESULTS = Integer.getInteger("jnotes.maxSearchResults", 10000);
+    public static final int SEARCH_CACHE_SIZE = 256; // Number of search results kept by the search result cache
+    public static final long SEARCH_DEBOUNCE_MILLIS = 150; // Search starts once typing pauses for this long
+    public static final int NOTES_TABLE_PAGE_SIZE = 100; // Rows read at a time as the notes table is scrolled
+    public static final int NOTES_TABLE_CACHED_PAGES = 20; // Pages of rows the notes table keeps in memory
+    public static final int NOTES_PAGE_SIZE = 1000; // Number of notes read at a time when walking a whole notebook
+    public static final int SYNC_PARALLELISM = Integer.getInteger("jnotes.syncParallelism", 8); // Notebooks backed up or restored at a time
+    public static final long SYNC_OVERLAP_MILLIS = 5000; // Writes this close before the last sync are sent again by the next one
+    // Group commit of local writes, disabled when the interval is 0
+    public static final long GROUP_COMMIT_INTERVAL_MILLIS = Long.getLong("jnotes.groupCommitMillis", 0L);
+    public static final int GROUP_COMMIT_MAX_PENDING_WRITES = Integer.getInteger("jnotes.groupCommitMaxWrites", 1000);
     public static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     public static final String EXTENSION_JSON = ".json";
@@ -42,5 +53,9 @@ public final class JNotesConstants {
     public static final String ONLINE_SYNC_CONF_FILE = "jn_sync_DO_NOT_TOUCH.txt";
     public static final String REMOTE_URL = "https://jnotes-api.azurewebsites.net/";
     //public static final String REMOTE_URL = "http://localhost:5000/";
+    // Remote Dao transport: "httpclient" for java.net.http.HttpClient (asynchronous, HTTP/2), otherwise RestTemplate
+    public static final String REMOTE_TRANSPORT = System.getProperty("jnotes.remoteTransport", "resttemplate");
+    public static final long REMOTE_CONNECT_TIMEOUT_MILLIS = Long.getLong("jnotes.remoteConnectTimeoutMillis", 10000L);
+    public static final long REMOTE_READ_TIMEOUT_MILLIS = Long.getLong("jnotes.remoteReadTimeoutMillis", 60000L); // Until response headers arrive
     
 }
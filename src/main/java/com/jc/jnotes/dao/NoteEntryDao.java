@@ -19,6 +19,7 @@
 package com.jc.jnotes.dao;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.jc.jnotes.model.NoteEntry;
 
@@ -38,10 +39,35 @@ public interface NoteEntryDao {
      */
     List<NoteEntry> getAll(String notebook);
 
+    /**
+     * Walks all entries of the notebook in the same order as getAll, handing them to pageConsumer at most pageSize at a
+     * time. Implementations which can read incrementally should override this so that only one page is held in memory.
+     */
+    default void forEachPage(String notebook, int pageSize, Consumer<List<NoteEntry>> pageConsumer) {
+        List<NoteEntry> noteEntries = getAll(notebook);
+        for (int fromIndex = 0; fromIndex < noteEntries.size(); fromIndex += pageSize) {
+            pageConsumer.accept(noteEntries.subList(fromIndex, Math.min(fromIndex + pageSize, noteEntries.size())));
+        }
+    }
+
     void addNoteEntry(NoteEntry noteEntry);
 
     void editNoteEntry(NoteEntry noteEntry);
 
+    /**
+     * Adds all the entries as one batch. Implementations should override this to avoid a round trip or commit per entry.
+     */
+    default void addNoteEntries(List<NoteEntry> noteEntries) {
+        noteEntries.forEach(this::addNoteEntry);
+    }
+
+    /**
+     * Adds the entries which do not exist yet and replaces the ones which do, matched by id, as one batch.
+     */
+    default void upsertNoteEntries(List<NoteEntry> noteEntries) {
+        noteEntries.forEach(this::editNoteEntry);
+    }
+
     void deleteNoteEntry(NoteEntry noteEntry);
 
     void deleteNoteEntries(List<NoteEntry> noteEntries);
@@ -18,19 +18,167 @@
  */
 package com.jc.jnotes.dao.local;
 
+import static com.jc.jnotes.JNotesConstants.MAX_SEARCH_RESULTS;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import com.jc.jnotes.dao.NoteEntryDao;
 import com.jc.jnotes.model.NoteEntry;
 
 /**
  * Local version of NoteEntryDao should also provide functionality of Search along with CRUD.
+ * A Local Dao keeps its store open for its lifetime, so it must be closed once it is no longer used.
  * 
  * @author Joy C
  *
  */
-public interface LocalNoteEntryDao  extends NoteEntryDao {
+public interface LocalNoteEntryDao  extends NoteEntryDao, AutoCloseable {
+
+    /**
+     * 
+     * @param previousPage
+     *            - null to read the first page
+     * @return the pageSize entries following previousPage, in the same order as getAll. Pages read across writes may
+     *         skip or repeat entries, use forEachPage for a consistent walk.
+     */
+    default NoteEntryPage getPage(NoteEntryPage previousPage, int pageSize) {
+        return getPage(previousPage, 0, pageSize, false);
+    }
+
+    /**
+     * Same as getPage(previousPage, offset, pageSize, false)
+     */
+    default NoteEntryPage getPage(NoteEntryPage previousPage, int offset, int pageSize) {
+        return getPage(previousPage, offset, pageSize, false);
+    }
+
+    /**
+     * Prefer an offset of 0 when walking pages in order, the skipped entries' positions are read as well.
+     * 
+     * @param previousPage
+     *            - null to count offset from the first entry. Read with the same oldestFirst.
+     * @param oldestFirst
+     *            - false: in the same order as getAll, true: in the reverse order
+     * @return the pageSize entries starting offset entries after previousPage
+     */
+    NoteEntryPage getPage(NoteEntryPage previousPage, int offset, int pageSize, boolean oldestFirst);
+
+    /**
+     * Same as getPage(null, offset, pageSize)
+     */
+    default NoteEntryPage getPage(int offset, int pageSize) {
+        return getPage(null, offset, pageSize);
+    }
+
+    /**
+     * 
+     * @return number of entries, without reading them
+     */
+    int getCount();
+
+    /**
+     * listener is called after every successful write through this Dao, on the writing thread, once the write is
+     * visible to reads.
+     */
+    void addChangeListener(Consumer<NoteEntryChangeEvent> listener);
+
+    void removeChangeListener(Consumer<NoteEntryChangeEvent> listener);
+
+    /**
+     * 
+     * @return entries last modified between from and to (both inclusive), latest modified on top
+     */
+    List<NoteEntry> getModifiedBetween(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Walks, in the same way as forEachPage, the entries written through a Dao of this notebook at or after sinceMillis.
+     * This is the local write time, not lastModifiedTime, so entries moved, imported or restored with an older
+     * lastModifiedTime are included.
+     */
+    void forEachWrittenSince(long sinceMillis, int pageSize, Consumer<List<NoteEntry>> pageConsumer);
+
+    /**
+     * 
+     * @return ids of the entries deleted since they were last synced (tombstones), kept across restarts. Only kept once
+     *         the notebook has been synced.
+     */
+    List<String> getDeletedIds();
+
+    /**
+     * 
+     * @return time, as given to markSynced, of the last sync of this notebook. 0 if it has never been synced.
+     */
+    long getLastSyncedMillis();
+
+    /**
+     * Records a successful sync: the last synced time becomes syncedMillis and the given tombstones are dropped.
+     */
+    void markSynced(long syncedMillis, Collection<String> syncedDeletedIds);
+
+    /**
+     * Forgets the last sync and the tombstones, so that the next sync replaces the notebook as a whole in the remote
+     * store. For when the remote notebook of this name is not known to match it, e.g. after a rename not applied remotely.
+     */
+    void resetSyncState();
+
+    /**
+     * Upserts, as upsertNoteEntries does, entries read from the remote store. They are already there, so
+     * forEachWrittenSince does not report them until they are written again.
+     */
+    void restoreNoteEntries(List<NoteEntry> noteEntries);
+
+    /**
+     * List reads (getAll, getPage, searchNotes, getModifiedBetween) may leave info to be read by this method the first
+     * time NoteEntry.getInfo() is called.
+     * 
+     * @return info of the entry with the given id, null if there is no such entry
+     */
+    String getInfo(String id);
+
+    /**
+     * Entries may be shown after their Dao is closed (e.g. the notebook was renamed), so the info left to getInfo is
+     * read through currentDao: the Dao open for this notebook when info is asked for, null if there is none.
+     */
+    void setCurrentDaoLookup(Supplier<LocalNoteEntryDao> currentDao);
+
+    /**
+     * Same as searchNotes(searchParam, searchInfo, MAX_SEARCH_RESULTS)
+     */
+    default List<NoteEntry> searchNotes(String searchParam, boolean searchInfo) {
+        return searchNotes(searchParam, searchInfo, MAX_SEARCH_RESULTS);
+    }
+
+    /**
+     * 
+     * @return at most maxResults entries containing searchParam, entries matching on key are listed before the ones
+     *         matching only on value, which are listed before the ones matching only on info.
+     */
+    default List<NoteEntry> searchNotes(String searchParam, boolean searchInfo, int maxResults) {
+        return searchScoredNotes(searchParam, searchInfo, maxResults).stream().map(ScoredNoteEntry::getNoteEntry)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Same as searchNotes(searchParam, searchInfo, maxResults) but along with the score of each hit.
+     */
+    List<ScoredNoteEntry> searchScoredNotes(String searchParam, boolean searchInfo, int maxResults);
+
+    /**
+     * 
+     * @return a number which changes after every write, and which is never repeated by another Dao instance. Results read
+     *         at the same generation are still current.
+     */
+    long getGeneration();
 
-    List<NoteEntry> searchNotes(String searchParam, boolean searchInfo);
+    /**
+     * Flushes any pending changes and releases the underlying store.
+     */
+    @Override
+    void close();
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.dao.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.jc.jnotes.model.NoteEntry;
+
+/**
+ * One successful write to a notebook, as sent to the change listeners of LocalNoteEntryDao.
+ * 
+ * @author Joy C
+ *
+ */
+public final class NoteEntryChangeEvent {
+
+    public enum Type {
+        ADDED,
+        // Also sent for upserts, some of whose entries may be new to the notebook
+        EDITED,
+        DELETED
+    }
+
+    private final Type type;
+    private final String notebook;
+    private final List<NoteEntry> noteEntries;
+
+    public NoteEntryChangeEvent(Type type, String notebook, List<NoteEntry> noteEntries) {
+        this.type = type;
+        this.notebook = notebook;
+        this.noteEntries = Collections.unmodifiableList(new ArrayList<>(noteEntries)); // may be a live list, e.g. a selection
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getNotebook() {
+        return notebook;
+    }
+
+    /**
+     * 
+     * @return the entries as they were passed to the write
+     */
+    public List<NoteEntry> getNoteEntries() {
+        return noteEntries;
+    }
+
+    public List<String> getIds() {
+        return noteEntries.stream().map(NoteEntry::getId).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "NoteEntryChangeEvent [type=" + type + ", notebook=" + notebook + ", count=" + noteEntries.size() + "]";
+    }
+
+}
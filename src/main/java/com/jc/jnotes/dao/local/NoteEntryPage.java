@@ -0,0 +1,55 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.dao.local;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.jc.jnotes.model.NoteEntry;
+
+/**
+ * One page of NoteEntries read via LocalNoteEntryDao.getPage. Pass it back to getPage to read the page after it.
+ * 
+ * @author Joy C
+ *
+ */
+public final class NoteEntryPage {
+
+    private final List<NoteEntry> noteEntries;
+    // Dao specific position of the last entry of this page, null when there are no more pages.
+    private final Object cursor;
+
+    public NoteEntryPage(List<NoteEntry> noteEntries, Object cursor) {
+        this.noteEntries = Collections.unmodifiableList(noteEntries);
+        this.cursor = cursor;
+    }
+
+    public List<NoteEntry> getNoteEntries() {
+        return noteEntries;
+    }
+
+    public Object getCursor() {
+        return cursor;
+    }
+
+    public boolean hasNext() {
+        return cursor != null;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.dao.local;
+
+import com.jc.jnotes.model.NoteEntry;
+
+/**
+ * A search hit along with its score. Scores of different notebooks are comparable, so hits of several notebooks can be
+ * merged by score.
+ * 
+ * @author Joy C
+ *
+ */
+public final class ScoredNoteEntry {
+
+    private final NoteEntry noteEntry;
+    private final float score;
+
+    public ScoredNoteEntry(NoteEntry noteEntry, float score) {
+        this.noteEntry = noteEntry;
+        this.score = score;
+    }
+
+    public NoteEntry getNoteEntry() {
+        return noteEntry;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+}
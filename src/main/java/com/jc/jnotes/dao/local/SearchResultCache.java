@@ -0,0 +1,105 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.dao.local;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of search results. Each result remembers the generation of the notebook it was read from, and is
+ * only served while the notebook is still at that generation, i.e. until the next write.
+ * 
+ * @author Joy C
+ *
+ */
+public final class SearchResultCache<T> {
+
+    private final Map<List<Object>, CachedResult<T>> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SearchResultCache(int maxEntries) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 
+     * @param key
+     *            - everything the result depends on, e.g. notebook, search text and flags
+     * @param generation
+     *            - current generation of the searched notebook
+     * @param search
+     *            - runs the search on a miss
+     */
+    public T get(List<Object> key, long generation, Supplier<T> search) {
+        synchronized (cache) {
+            CachedResult<T> cachedResult = cache.get(key);
+            if (cachedResult != null && cachedResult.generation == generation) {
+                hits.incrementAndGet();
+                return cachedResult.result;
+            }
+        }
+        misses.incrementAndGet();
+        T result = search.get();
+        synchronized (cache) {
+            cache.put(key, new CachedResult<>(generation, result));
+        }
+        return result;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResultCache hits: " + getHits() + " misses: " + getMisses();
+    }
+
+    private static final class CachedResult<T> {
+        private final long generation;
+        private final T result;
+
+        private CachedResult(long generation, T result) {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+
+}
@@ -19,6 +19,7 @@
 package com.jc.jnotes.dao.local.lucene;
 
 import static com.jc.jnotes.JNotesConstants.DATETIME_DISPLAY_FORMAT;
+import static com.jc.jnotes.JNotesConstants.NOTES_PAGE_SIZE;
 import static com.jc.jnotes.model.NoteEntry.ID_COL_NAME;
 import static com.jc.jnotes.model.NoteEntry.INFO_COL_NAME;
 import static com.jc.jnotes.model.NoteEntry.KEY_COL_NAME;
@@ -31,37 +32,78 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortField.Type;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 
 import com.jc.jnotes.dao.DaoRuntimeException;
 import com.jc.jnotes.dao.local.LocalNoteEntryDao;
+import com.jc.jnotes.dao.local.NoteEntryChangeEvent;
+import com.jc.jnotes.dao.local.NoteEntryPage;
+import com.jc.jnotes.dao.local.ScoredNoteEntry;
 import com.jc.jnotes.model.NoteEntry;
 
 /**
@@ -74,57 +116,278 @@ import com.jc.jnotes.model.NoteEntry;
 public class LuceneNoteEntryDao implements LocalNoteEntryDao {
 
     private final Directory indexDir;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    // Group commit: one daemon thread commits the pending writes of all notebooks
+    private static final ScheduledExecutorService COMMIT_SCHEDULER = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "jnotes-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final boolean groupCommit;
+    private final int maxPendingWrites;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final ScheduledFuture<?> scheduledCommit;
+
+    private final List<Consumer<NoteEntryChangeEvent>> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile Supplier<LocalNoteEntryDao> currentDao = () -> this;
+
+    // Hits of the last search, used to answer a search which extends it
+    private volatile LastSearch lastSearch;
+
+    // Generations are drawn from one counter so that a reopened notebook never repeats one
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private volatile long generation = GENERATIONS.incrementAndGet();
     private final Query getAllQuery = new MatchAllDocsQuery();
-    private final StandardAnalyzer analyzer = new StandardAnalyzer();
+    // Latest modified first, entries modified in the same milli second are in reverse order of indexing
+    private final Sort getAllSort = new Sort(new SortField[] { new SortField(LAST_MODIFIED_MILLIS_COL_NAME, Type.LONG, true),
+            new SortField(null, Type.DOC, true) });
+    // Reverse of getAllSort
+    private final Sort oldestFirstSort = new Sort(new SortField[] { new SortField(LAST_MODIFIED_MILLIS_COL_NAME, Type.LONG, false),
+            new SortField(null, Type.DOC, false) });
+    private final Analyzer analyzer;
     private final String notebook;
     private static final int DAO_TYPE = DaoRuntimeException.LOCAL;
+
+    // Shadow fields holding the n-grams of key/value so that substring search is a term lookup. Info is free text, often
+    // long, its n-grams would make up most of the index and of the write cost, so it is searched with a wildcard query.
+    // Indexes before version 7 had an info n-gram field too.
+    private static final String NGRAM_SUFFIX = "_ngram";
+    private static final String KEY_NGRAM_COL_NAME = KEY_COL_NAME + NGRAM_SUFFIX;
+    private static final String VALUE_NGRAM_COL_NAME = VALUE_COL_NAME + NGRAM_SUFFIX;
+    private static final int MIN_NGRAM = 1;
+    private static final int MAX_NGRAM = 15; // Longer search strings fall back to a wildcard query
+    static final int MAX_REFINED_HITS = 256; // A search with more hits is not refined, see isRefinementCheaper
+    // Only ever matched by constant score term queries, so neither frequencies, positions nor norms are indexed.
+    // Indexes before version 6 had them as TextFields.
+    private static final FieldType NGRAM_FIELD_TYPE = new FieldType();
+    static {
+        NGRAM_FIELD_TYPE.setTokenized(true);
+        NGRAM_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS);
+        NGRAM_FIELD_TYPE.setOmitNorms(true);
+        NGRAM_FIELD_TYPE.freeze();
+    }
+
+    // A key match must outrank a value+info match and a value match must outrank an info match.
+    private static final float KEY_MATCH_BOOST = 4f;
+    private static final float VALUE_MATCH_BOOST = 2f;
+    private static final float INFO_MATCH_BOOST = 1f;
+
+    // lastModifiedTime as epoch millis: stored, indexed as a point for range queries and as doc values for sorting.
+    // Indexes before version 3 stored it only as a DATETIME_DISPLAY_FORMAT string in LAST_MODIFIED_TIME_COL_NAME.
+    private static final String LAST_MODIFIED_MILLIS_COL_NAME = LAST_MODIFIED_TIME_COL_NAME + "Millis";
+
+    // Stored fields decoded for list views, info can be large so it is read only when needed
+    private static final Set<String> LIST_FIELDS = Set.of(ID_COL_NAME, KEY_COL_NAME, VALUE_COL_NAME, PASSWORD_FLAG_COL_NAME,
+            LAST_MODIFIED_MILLIS_COL_NAME);
+    private static final Set<String> ALL_FIELDS = Set.of(ID_COL_NAME, KEY_COL_NAME, VALUE_COL_NAME, INFO_COL_NAME,
+            PASSWORD_FLAG_COL_NAME, LAST_MODIFIED_MILLIS_COL_NAME);
+    private static final Set<String> INFO_FIELDS = Set.of(INFO_COL_NAME);
+
+    // Stored in the commit user data, indexes written with an older version are rebuilt on open.
+    private static final String INDEX_VERSION_KEY = "jnotesIndexVersion";
+    private static final int INDEX_VERSION = 7;
+
+    // Sync state is kept in the commit user data too, so that it is committed along with the writes it is about.
+    private static final String LAST_SYNCED_MILLIS_KEY = "jnotesLastSyncedMillis";
+    private static final String DELETED_IDS_KEY = "jnotesDeletedIds";
+    private static final String DELETED_IDS_SEPARATOR = "\n";
+    // Local write time, indexed as a point only, for finding the entries written since the last sync
+    private static final String WRITE_TIME_MILLIS_COL_NAME = "writeTimeMillis";
+    // Write time of the entries read from the remote store, before any sync, so that they are not sent back to it
+    private static final long RESTORED_WRITE_TIME_MILLIS = Long.MIN_VALUE;
+    private long lastSyncedMillis;
+    private final Set<String> deletedIds = new LinkedHashSet<>();
     // private final MultiFieldQueryParser multiFieldQueryParser = new MultiFieldQueryParser(new String[]{"key", "value",
     // "info"}, analyzer);
 
+    /**
+     * Creates a Dao which commits after every write.
+     */
     public LuceneNoteEntryDao(String basePath, String pathAppender, String notebook) throws IOException {
+        this(basePath, pathAppender, notebook, 0, 0);
+    }
+
+    /**
+     * Creates a Dao which group commits: writes are visible to searches right away but are committed to disk in the
+     * background every commitIntervalMillis, or as soon as maxPendingWrites writes are waiting, whichever comes first.
+     * Pending writes are committed on close. A commitIntervalMillis of 0 disables group commit.
+     */
+    public LuceneNoteEntryDao(String basePath, String pathAppender, String notebook, long commitIntervalMillis, int maxPendingWrites)
+            throws IOException {
         System.out.println("Creating LuceneNoteEntryDao : notebook :" + notebook);
         this.notebook = notebook;
+        this.groupCommit = commitIntervalMillis > 0;
+        this.maxPendingWrites = maxPendingWrites;
         Path indexPath = Paths.get(basePath, pathAppender, notebook);
         File file = indexPath.toFile();
         if (!file.exists()) {
             file.mkdirs();
         }
         indexDir = FSDirectory.open(indexPath);
+        Analyzer ngramAnalyzer = new NGramAnalyzer(MIN_NGRAM, MAX_NGRAM);
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        fieldAnalyzers.put(KEY_NGRAM_COL_NAME, ngramAnalyzer);
+        fieldAnalyzers.put(VALUE_NGRAM_COL_NAME, ngramAnalyzer);
+        analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(), fieldAnalyzers);
+        // One writer for the lifetime of this Dao, it holds the index write lock until close() is called.
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
+        writer = new IndexWriter(indexDir, indexWriterConfig);
+        readSyncState();
+        upgradeIndexIfRequired();
+        // Near real time searcher shared by all reads, it is refreshed from the writer after every write.
+        searcherManager = new SearcherManager(writer, null);
+        if (groupCommit) {
+            scheduledCommit = COMMIT_SCHEDULER.scheduleWithFixedDelay(this::commitPendingWrites, commitIntervalMillis,
+                    commitIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduledCommit = null;
+        }
     }
 
     @Override
     public List<NoteEntry> getAll(String notebook) {
-        List<NoteEntry> noteEntries;
-        IndexReader indexReader;
+        List<NoteEntry> noteEntries = new ArrayList<>();
+        forEachPage(getAllQuery, NOTES_PAGE_SIZE, false, noteEntries::addAll);
+        return noteEntries;
+    }
+
+    /**
+     * All pages are read from the same point-in-time searcher, so writes made during the walk are not seen by it. As the
+     * whole notebook is being walked (backup, export), info is read along with the other fields.
+     */
+    @Override
+    public void forEachPage(String notebook, int pageSize, Consumer<List<NoteEntry>> pageConsumer) {
+        forEachPage(getAllQuery, pageSize, true, pageConsumer);
+    }
+
+    @Override
+    public List<NoteEntry> getModifiedBetween(LocalDateTime from, LocalDateTime to) {
+        Query rangeQuery = LongPoint.newRangeQuery(LAST_MODIFIED_MILLIS_COL_NAME, toEpochMillis(from), toEpochMillis(to));
+        List<NoteEntry> noteEntries = new ArrayList<>();
+        forEachPage(rangeQuery, NOTES_PAGE_SIZE, false, noteEntries::addAll);
+        return noteEntries;
+    }
+
+    /**
+     * Info is read along with the other fields, as the entries are on their way to the remote store.
+     */
+    @Override
+    public void forEachWrittenSince(long sinceMillis, int pageSize, Consumer<List<NoteEntry>> pageConsumer) {
+        forEachPage(LongPoint.newRangeQuery(WRITE_TIME_MILLIS_COL_NAME, sinceMillis, Long.MAX_VALUE), pageSize, true, pageConsumer);
+    }
+
+    @Override
+    public synchronized List<String> getDeletedIds() {
+        return new ArrayList<>(deletedIds);
+    }
+
+    @Override
+    public synchronized long getLastSyncedMillis() {
+        return lastSyncedMillis;
+    }
+
+    @Override
+    public void markSynced(long syncedMillis, Collection<String> syncedDeletedIds) {
+        try {
+            synchronized (this) {
+                lastSyncedMillis = syncedMillis;
+                deletedIds.removeAll(syncedDeletedIds);
+                writer.setLiveCommitData(getCommitData().entrySet());
+            }
+            writer.commit();
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    @Override
+    public void resetSyncState() {
+        try {
+            synchronized (this) {
+                lastSyncedMillis = 0;
+                deletedIds.clear();
+                writer.setLiveCommitData(getCommitData().entrySet());
+            }
+            writer.commit();
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    private synchronized void addDeletedIds(List<NoteEntry> noteEntries) {
+        if (lastSyncedMillis == 0) {
+            return; // a notebook never synced is replaced as a whole by the next backup, it needs no tombstones
+        }
+        noteEntries.forEach((noteEntry) -> deletedIds.add(noteEntry.getId()));
+        writer.setLiveCommitData(getCommitData().entrySet()); // committed along with the deletes
+    }
+
+    private void forEachPage(Query query, int pageSize, boolean withInfo, Consumer<List<NoteEntry>> pageConsumer) {
         try {
+            IndexSearcher searcher = searcherManager.acquire();
             try {
-                indexReader = DirectoryReader.open(indexDir);
-            } catch (IndexNotFoundException ex) {
-                return Collections.emptyList();
+                ScoreDoc after = null;
+                do {
+                    TopDocs topDocs = searcher.searchAfter(after, query, pageSize, getAllSort);
+                    if (topDocs.scoreDocs.length == 0) {
+                        break;
+                    }
+                    pageConsumer.accept(getNoteEntries(topDocs, searcher, withInfo));
+                    after = topDocs.scoreDocs.length < pageSize ? null : topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+                } while (after != null);
+            } finally {
+                searcherManager.release(searcher);
             }
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    @Override
+    public NoteEntryPage getPage(NoteEntryPage previousPage, int offset, int pageSize, boolean oldestFirst) {
+        if (previousPage != null && !previousPage.hasNext()) {
+            return new NoteEntryPage(Collections.emptyList(), null);
+        }
+        ScoreDoc after = previousPage == null ? null : (ScoreDoc) previousPage.getCursor();
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
             try {
-                IndexSearcher searcher = new IndexSearcher(indexReader);
-                Sort sort = new Sort(new SortField[] { new SortField(null, Type.DOC, true) });// Sort based on order of last modified
-                TopDocs topDocs = searcher.search(getAllQuery, 10000, sort);
-                noteEntries = getNoteEntries(topDocs, searcher);
+                TopDocs topDocs = searcher.searchAfter(after, getAllQuery, offset + pageSize, oldestFirst ? oldestFirstSort : getAllSort);
+                int end = topDocs.scoreDocs.length;
+                ScoreDoc[] pageScoreDocs = Arrays.copyOfRange(topDocs.scoreDocs, Math.min(offset, end), end);
+                TopDocs pageTopDocs = new TopDocs(topDocs.totalHits, pageScoreDocs);
+                ScoreDoc last = pageScoreDocs.length < pageSize ? null : pageScoreDocs[pageScoreDocs.length - 1];
+                return new NoteEntryPage(getNoteEntries(pageTopDocs, searcher, false), last);
             } finally {
-                indexReader.close();
+                searcherManager.release(searcher);
+            }
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return searcher.getIndexReader().numDocs();
+            } finally {
+                searcherManager.release(searcher);
             }
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, ex);
         }
-        return noteEntries;
     }
 
     @Override
     public void addNoteEntry(NoteEntry noteEntry) {
         try {
-            IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
-            IndexWriter writer = new IndexWriter(indexDir, indexWriterConfig);
             Document document = fromNoteEntry(noteEntry);
             writer.addDocument(document);
-            writer.commit();
-            writer.close();
+            afterWrite(NoteEntryChangeEvent.Type.ADDED, List.of(noteEntry));
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, ex);
         }
@@ -133,13 +396,54 @@ public class LuceneNoteEntryDao implements LocalNoteEntryDao {
     @Override
     public void editNoteEntry(NoteEntry noteEntry) {
         try {
-            IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
-            IndexWriter writer = new IndexWriter(indexDir, indexWriterConfig);
             Document document = fromNoteEntry(noteEntry);
-            Term idTerm = new Term(ID_COL_NAME, noteEntry.getId());
+            Term idTerm = idTerm(noteEntry);
             writer.updateDocument(idTerm, document);
-            writer.commit();
-            writer.close();
+            afterWrite(NoteEntryChangeEvent.Type.EDITED, List.of(noteEntry));
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    @Override
+    public void addNoteEntries(List<NoteEntry> noteEntries) {
+        if (noteEntries == null) {
+            throw new IllegalArgumentException("addNoteEntries: Cannot pass null as argument.");
+        }
+        try {
+            List<Document> documents = noteEntries.stream().map(this::fromNoteEntry).collect(Collectors.toList());
+            writer.addDocuments(documents);
+            afterWrite(NoteEntryChangeEvent.Type.ADDED, noteEntries);
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    @Override
+    public void upsertNoteEntries(List<NoteEntry> noteEntries) {
+        if (noteEntries == null) {
+            throw new IllegalArgumentException("upsertNoteEntries: Cannot pass null as argument.");
+        }
+        try {
+            for (NoteEntry noteEntry : noteEntries) {
+                writer.updateDocument(idTerm(noteEntry), fromNoteEntry(noteEntry));
+            }
+            afterWrite(NoteEntryChangeEvent.Type.EDITED, noteEntries);
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    @Override
+    public void restoreNoteEntries(List<NoteEntry> noteEntries) {
+        if (noteEntries == null) {
+            throw new IllegalArgumentException("restoreNoteEntries: Cannot pass null as argument.");
+        }
+        try {
+            for (NoteEntry noteEntry : noteEntries) {
+                writer.updateDocument(idTerm(noteEntry), fromNoteEntry(noteEntry, RESTORED_WRITE_TIME_MILLIS));
+            }
+            afterWrite(NoteEntryChangeEvent.Type.EDITED, noteEntries);
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, ex);
         }
@@ -148,13 +452,10 @@ public class LuceneNoteEntryDao implements LocalNoteEntryDao {
     @Override
     public void deleteNoteEntry(NoteEntry noteEntry) {
         try {
-            IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
-            IndexWriter writer = new IndexWriter(indexDir, indexWriterConfig);
-            writer.deleteDocuments(new Term(ID_COL_NAME, noteEntry.getId()));
-            writer.flush();
+            writer.deleteDocuments(idTerm(noteEntry));
             // writer.forceMergeDeletes();
-            writer.commit();
-            writer.close();
+            addDeletedIds(List.of(noteEntry));
+            afterWrite(NoteEntryChangeEvent.Type.DELETED, List.of(noteEntry));
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, ex);
         }
@@ -166,87 +467,427 @@ public class LuceneNoteEntryDao implements LocalNoteEntryDao {
             throw new IllegalArgumentException("deleteNoteEntries: Cannot pass null as argument.");
         }
         try {
-            IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
-            IndexWriter writer = new IndexWriter(indexDir, indexWriterConfig);
-            // final int noteEntriesToBeDeleted = noteEntries.size();
-            // Term[] terms = new Term[noteEntriesToBeDeleted];
-            // for (int i=0; i<noteEntriesToBeDeleted; i++) {
-            // Term term = new Term(ID_COL_NAME, noteEntries.get(i).getId());
-            // terms[i] = term;
-            // }
             Term[] terms = noteEntries.stream().map((noteEntry) -> {
-                Term term = new Term(ID_COL_NAME, noteEntry.getId());
+                Term term = idTerm(noteEntry);
                 return term;
             }).toArray(Term[]::new);
 
             writer.deleteDocuments(terms);
-            writer.flush();
             // writer.forceMergeDeletes();
-            writer.commit();
-            writer.close();
+            addDeletedIds(noteEntries);
+            afterWrite(NoteEntryChangeEvent.Type.DELETED, noteEntries);
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, ex);
         }
     }
 
+    /**
+     * Commits pending changes and releases the index write lock. The Dao must not be used after this.
+     */
     @Override
-    public List<NoteEntry> searchNotes(String searchParam, boolean searchInfo) {
-        List<NoteEntry> noteEntries = new ArrayList<>();
+    public void close() {
         try {
-            searchParam = searchParam.toLowerCase();
-            IndexReader indexReader = DirectoryReader.open(indexDir);
-            IndexSearcher searcher = new IndexSearcher(indexReader);
-            Set<NoteEntry> searchedEntries = new LinkedHashSet<>();
+            System.out.println("Closing LuceneNoteEntryDao : notebook :" + notebook);
+            if (scheduledCommit != null) {
+                scheduledCommit.cancel(false);
+            }
+            searcherManager.close();
+            if (writer.isOpen()) {
+                writer.close(); // commits pending writes
+            }
+            indexDir.close();
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    /**
+     * Makes the write visible to searches and, unless group commit is on, commits it. Then tells the change listeners.
+     */
+    private void afterWrite(NoteEntryChangeEvent.Type type, List<NoteEntry> noteEntries) throws IOException {
+        if (!groupCommit) {
+            writer.commit();
+        } else if (pendingWrites.addAndGet(noteEntries.size()) >= maxPendingWrites) {
+            COMMIT_SCHEDULER.execute(this::commitPendingWrites);
+        }
+        searcherManager.maybeRefreshBlocking();
+        generation = GENERATIONS.incrementAndGet();
+
+        NoteEntryChangeEvent changeEvent = new NoteEntryChangeEvent(type, notebook, noteEntries);
+        for (Consumer<NoteEntryChangeEvent> listener : changeListeners) {
+            try {
+                listener.accept(changeEvent);
+            } catch (Exception ex) {
+                // The write itself has succeeded
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void addChangeListener(Consumer<NoteEntryChangeEvent> listener) {
+        changeListeners.add(listener);
+    }
 
-            Term keyTerm = new Term(KEY_COL_NAME, "*" + searchParam + "*");
-            Query keyQuery = new WildcardQuery(keyTerm);
-            TopDocs keyTopDocs = searcher.search(keyQuery, 10000);
-            searchedEntries.addAll(getNoteEntries(keyTopDocs, searcher));
+    @Override
+    public void removeChangeListener(Consumer<NoteEntryChangeEvent> listener) {
+        changeListeners.remove(listener);
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
 
-            Term valueTerm = new Term(VALUE_COL_NAME, "*" + searchParam + "*");
-            Query valueQuery = new WildcardQuery(valueTerm);
-            TopDocs valueTopDocs = searcher.search(valueQuery, 10000);
-            searchedEntries.addAll(getNoteEntries(valueTopDocs, searcher));
+    private void commitPendingWrites() {
+        int writes = pendingWrites.getAndSet(0);
+        if (writes == 0 || !writer.isOpen()) {
+            return;
+        }
+        try {
+            writer.commit();
+        } catch (AlreadyClosedException ex) {
+            // Dao was closed meanwhile, close() has committed the writes
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            pendingWrites.addAndGet(writes); // retried on the next run
+        }
+    }
 
-            if (searchInfo) {
-                Term infoTerm = new Term(INFO_COL_NAME, "*" + searchParam + "*");
-                Query infoQuery = new WildcardQuery(infoTerm);
-                TopDocs infoTopDocs = searcher.search(infoQuery, 10000);
-                searchedEntries.addAll(getNoteEntries(infoTopDocs, searcher));
+    /**
+     * When searchParam extends the previous search of this notebook (e.g. "data" after "dat"), nothing was written
+     * since and isRefinementCheaper, the hits are found by filtering the previous hits instead of querying the whole
+     * index.
+     */
+    @Override
+    public List<ScoredNoteEntry> searchScoredNotes(String searchParam, boolean searchInfo, int maxResults) {
+        List<ScoredNoteEntry> scoredNoteEntries;
+        try {
+            searchParam = searchParam.toLowerCase();
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                LastSearch previousSearch = lastSearch;
+                if (previousSearch != null && previousSearch.canBeRefinedTo(searcher, searchParam, searchInfo, maxResults)
+                        && isRefinementCheaper(previousSearch.scoreDocs.length, searchParam, searchInfo)) {
+                    scoredNoteEntries = refineSearch(previousSearch, searcher, searchParam, searchInfo, maxResults);
+                } else {
+                    scoredNoteEntries = search(searcher, searchParam, searchInfo, maxResults);
+                }
+            } finally {
+                searcherManager.release(searcher);
             }
-            noteEntries.addAll(searchedEntries);
-            indexReader.close();
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, ex);
         }
-        return noteEntries;
+        return scoredNoteEntries;
+
+    }
+
+    private List<ScoredNoteEntry> search(IndexSearcher searcher, String searchParam, boolean searchInfo, int maxResults)
+            throws IOException {
+        // Clauses are constant scored so that the boosts alone decide the rank: key > value > info
+        BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+        queryBuilder.add(boostedSubstringQuery(KEY_COL_NAME, KEY_NGRAM_COL_NAME, searchParam, KEY_MATCH_BOOST), Occur.SHOULD);
+        queryBuilder.add(boostedSubstringQuery(VALUE_COL_NAME, VALUE_NGRAM_COL_NAME, searchParam, VALUE_MATCH_BOOST), Occur.SHOULD);
+        if (searchInfo) {
+            queryBuilder.add(boostedSubstringQuery(INFO_COL_NAME, null, searchParam, INFO_MATCH_BOOST), Occur.SHOULD);
+        }
+        TopDocs topDocs = searcher.search(queryBuilder.build(), maxResults);
+        List<NoteEntry> noteEntries = getNoteEntries(topDocs, searcher, false);
+        List<ScoredNoteEntry> scoredNoteEntries = new ArrayList<>();
+        for (int i = 0; i < noteEntries.size(); i++) {
+            scoredNoteEntries.add(new ScoredNoteEntry(noteEntries.get(i), topDocs.scoreDocs[i].score));
+        }
+        lastSearch = new LastSearch(searcher, searchParam, searchInfo, maxResults, topDocs.scoreDocs);
+        return scoredNoteEntries;
+    }
+
+    /**
+     * Refining reads the stored fields of every previous hit and matches them in Java, while the index query reads only
+     * its own hits, which are among the previous ones. An index query made of n-gram term lookups is then never slower.
+     * A wildcard query (info, or a search string longer than an n-gram) walks the field's whole term dictionary, which
+     * costs more than checking a few previous hits.
+     */
+    static boolean isRefinementCheaper(int previousHits, String searchParam, boolean searchInfo) {
+        boolean wildcardQuery = searchInfo || searchParam.length() > MAX_NGRAM;
+        return wildcardQuery && previousHits <= MAX_REFINED_HITS;
+    }
+
+    /**
+     * Every hit of searchParam is a hit of the previous search, so only those are checked. They are scored and ordered
+     * the same way the index query would: sum of the boosts of the matching fields, then doc id.
+     */
+    private List<ScoredNoteEntry> refineSearch(LastSearch previousSearch, IndexSearcher searcher, String searchParam,
+            boolean searchInfo, int maxResults) throws IOException {
+        List<ScoreDoc> refinedScoreDocs = new ArrayList<>();
+        Map<Integer, Document> refinedDocuments = new HashMap<>();
+        for (ScoreDoc scoreDoc : previousSearch.scoreDocs) {
+            Document dd = searcher.doc(scoreDoc.doc, searchInfo ? ALL_FIELDS : LIST_FIELDS);
+            float score = 0;
+            if (anyTokenContains(KEY_COL_NAME, dd.get(KEY_COL_NAME), searchParam)) {
+                score += KEY_MATCH_BOOST;
+            }
+            if (anyTokenContains(VALUE_COL_NAME, dd.get(VALUE_COL_NAME), searchParam)) {
+                score += VALUE_MATCH_BOOST;
+            }
+            if (searchInfo && anyTokenContains(INFO_COL_NAME, dd.get(INFO_COL_NAME), searchParam)) {
+                score += INFO_MATCH_BOOST;
+            }
+            if (score > 0) {
+                refinedScoreDocs.add(new ScoreDoc(scoreDoc.doc, score));
+                refinedDocuments.put(scoreDoc.doc, dd);
+            }
+        }
+        refinedScoreDocs.sort(Comparator.comparing((ScoreDoc scoreDoc) -> scoreDoc.score).reversed()
+                .thenComparing((ScoreDoc scoreDoc) -> scoreDoc.doc));
+
+        List<ScoredNoteEntry> scoredNoteEntries = new ArrayList<>();
+        for (ScoreDoc scoreDoc : refinedScoreDocs) {
+            NoteEntry noteEntry = toNoteEntry(refinedDocuments.get(scoreDoc.doc));
+            if (!searchInfo) {
+                BytesRef id = new BytesRef(noteEntry.getIdBytes());
+                noteEntry.setInfoLoader(() -> loadInfo(id, noteEntry));
+            }
+            scoredNoteEntries.add(new ScoredNoteEntry(noteEntry, scoreDoc.score));
+        }
+        lastSearch = new LastSearch(searcher, searchParam, searchInfo, maxResults, refinedScoreDocs.toArray(new ScoreDoc[0]));
+        return scoredNoteEntries;
+    }
+
+    /**
+     * In memory version of substringQuery: true if a token of text, as indexed in field, contains searchParam.
+     */
+    private boolean anyTokenContains(String field, String text, String searchParam) throws IOException {
+        if (text == null) {
+            return false;
+        }
+        try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            boolean found = false;
+            while (!found && tokenStream.incrementToken()) {
+                found = termAttribute.toString().contains(searchParam);
+            }
+            tokenStream.end();
+            return found;
+        }
+    }
 
+    private Query boostedSubstringQuery(String field, String ngramField, String searchParam, float boost) {
+        return new BoostQuery(new ConstantScoreQuery(substringQuery(field, ngramField, searchParam)), boost);
     }
 
-    protected List<NoteEntry> getNoteEntries(TopDocs topDocs, IndexSearcher searcher) throws IOException {
+    /**
+     * Matches documents having a token (of the given field) which contains searchParam. Search strings which fit in an
+     * n-gram are looked up directly in the n-gram shadow field, if the field has one.
+     * 
+     * @param ngramField
+     *            - null if field has no n-gram shadow field
+     */
+    private Query substringQuery(String field, String ngramField, String searchParam) {
+        if (ngramField != null && searchParam.length() <= MAX_NGRAM) {
+            return new TermQuery(new Term(ngramField, searchParam));
+        } else {
+            return new WildcardQuery(new Term(field, "*" + searchParam + "*"));
+        }
+    }
+
+    @Override
+    public String getInfo(String id) {
+        return getInfo(new BytesRef(NoteEntry.toIdBytes(id)));
+    }
+
+    @Override
+    public void setCurrentDaoLookup(Supplier<LocalNoteEntryDao> currentDao) {
+        this.currentDao = currentDao;
+    }
+
+    private String loadInfo(BytesRef id, NoteEntry noteEntry) {
+        LocalNoteEntryDao dao = currentDao.get();
+        if (dao instanceof LuceneNoteEntryDao) {
+            return ((LuceneNoteEntryDao) dao).getInfo(id);
+        }
+        return dao == null ? null : dao.getInfo(noteEntry.getId());
+    }
+
+    private String getInfo(BytesRef id) {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(new TermQuery(new Term(ID_COL_NAME, id)), 1);
+                if (topDocs.scoreDocs.length == 0) {
+                    return null;
+                }
+                return searcher.doc(topDocs.scoreDocs[0].doc, INFO_FIELDS).get(INFO_COL_NAME);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, ex);
+        }
+    }
+
+    /**
+     * 
+     * @param withInfo
+     *            - when false info is not decoded, it is read by id the first time NoteEntry.getInfo() is called.
+     */
+    protected List<NoteEntry> getNoteEntries(TopDocs topDocs, IndexSearcher searcher, boolean withInfo) throws IOException {
         List<NoteEntry> noteEntries = new ArrayList<>();
         ScoreDoc[] sDocs = topDocs.scoreDocs;
         for (ScoreDoc scoreDoc : sDocs) {
-            Document dd = searcher.doc(scoreDoc.doc);
-            NoteEntry noteEntry = new NoteEntry(notebook, dd.get(ID_COL_NAME), dd.get(KEY_COL_NAME), dd.get(VALUE_COL_NAME),
-                    dd.get(INFO_COL_NAME), dd.get(PASSWORD_FLAG_COL_NAME));
-            noteEntry.setLastModifiedTime(LocalDateTime.parse(dd.get(LAST_MODIFIED_TIME_COL_NAME), DATETIME_DISPLAY_FORMAT));
+            Document dd = searcher.doc(scoreDoc.doc, withInfo ? ALL_FIELDS : LIST_FIELDS);
+            NoteEntry noteEntry = toNoteEntry(dd);
+            if (!withInfo) {
+                BytesRef id = new BytesRef(noteEntry.getIdBytes());
+                noteEntry.setInfoLoader(() -> loadInfo(id, noteEntry));
+            }
             noteEntries.add(noteEntry);
         }
         return noteEntries;
     }
 
+    private NoteEntry toNoteEntry(Document dd) {
+        IndexableField lastModifiedMillis = dd.getField(LAST_MODIFIED_MILLIS_COL_NAME);
+        BytesRef id = dd.getBinaryValue(ID_COL_NAME);
+        // Indexes before version 4 have the id as a string
+        NoteEntry noteEntry = new NoteEntry(notebook, id == null ? dd.get(ID_COL_NAME) : null, dd.get(KEY_COL_NAME),
+                dd.get(VALUE_COL_NAME), dd.get(INFO_COL_NAME), dd.get(PASSWORD_FLAG_COL_NAME),
+                lastModifiedMillis != null ? lastModifiedMillis.numericValue().longValue() : readOldLastModifiedMillis(dd));
+        if (id != null) {
+            noteEntry.setIdBytes(id.bytes, id.offset, id.length);
+        }
+        return noteEntry;
+    }
+
+    private static Term idTerm(NoteEntry noteEntry) {
+        return new Term(ID_COL_NAME, new BytesRef(noteEntry.getIdBytes()));
+    }
+
+    // Only met while upgrading an index from before version 3
+    private static long readOldLastModifiedMillis(Document dd) {
+        return toEpochMillis(LocalDateTime.parse(dd.get(LAST_MODIFIED_TIME_COL_NAME), DATETIME_DISPLAY_FORMAT));
+    }
+
     private Document fromNoteEntry(NoteEntry noteEntry) {
+        return fromNoteEntry(noteEntry, System.currentTimeMillis());
+    }
+
+    private Document fromNoteEntry(NoteEntry noteEntry, long writeTimeMillis) {
         Document document = new Document();
-        document.add(new StringField(ID_COL_NAME, noteEntry.getId(), Field.Store.YES));// id is not to be tokenized
+        document.add(new StringField(ID_COL_NAME, new BytesRef(noteEntry.getIdBytes()), Field.Store.YES));// id is not to be tokenized
         document.add(new TextField(KEY_COL_NAME, noteEntry.getKey(), Field.Store.YES));
         document.add(new TextField(VALUE_COL_NAME, noteEntry.getValue(), Field.Store.YES));
         document.add(new TextField(INFO_COL_NAME, noteEntry.getInfo(), Field.Store.YES));
         document.add(new TextField(PASSWORD_FLAG_COL_NAME, noteEntry.getPasswordFlag(), Field.Store.YES));
-        document.add(new StringField(LAST_MODIFIED_TIME_COL_NAME, noteEntry.getLastModifiedTime().format(DATETIME_DISPLAY_FORMAT),
-                Field.Store.YES));
+        long lastModifiedMillis = noteEntry.getLastModifiedMillis();
+        document.add(new StoredField(LAST_MODIFIED_MILLIS_COL_NAME, lastModifiedMillis));
+        document.add(new LongPoint(LAST_MODIFIED_MILLIS_COL_NAME, lastModifiedMillis));
+        document.add(new NumericDocValuesField(LAST_MODIFIED_MILLIS_COL_NAME, lastModifiedMillis));
+        document.add(new LongPoint(WRITE_TIME_MILLIS_COL_NAME, writeTimeMillis));
+        document.add(new Field(KEY_NGRAM_COL_NAME, noteEntry.getKey(), NGRAM_FIELD_TYPE));
+        document.add(new Field(VALUE_NGRAM_COL_NAME, noteEntry.getValue(), NGRAM_FIELD_TYPE));
         return document;
 
     }
 
-}
\ No newline at end of file
+    private static long toEpochMillis(LocalDateTime localDateTime) {
+        return localDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private String getCommitData(String key) {
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (key.equals(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private Map<String, String> getCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(INDEX_VERSION_KEY, String.valueOf(INDEX_VERSION));
+        commitData.put(LAST_SYNCED_MILLIS_KEY, String.valueOf(lastSyncedMillis));
+        commitData.put(DELETED_IDS_KEY, String.join(DELETED_IDS_SEPARATOR, deletedIds));
+        return commitData;
+    }
+
+    private int getIndexVersion() {
+        String indexVersion = getCommitData(INDEX_VERSION_KEY);
+        return indexVersion == null ? 0 : Integer.parseInt(indexVersion);
+    }
+
+    private void readSyncState() {
+        String lastSynced = getCommitData(LAST_SYNCED_MILLIS_KEY);
+        lastSyncedMillis = lastSynced == null ? 0 : Long.parseLong(lastSynced);
+        String deleted = getCommitData(DELETED_IDS_KEY);
+        if (StringUtils.isNotEmpty(deleted)) {
+            deletedIds.addAll(Arrays.asList(deleted.split(DELETED_IDS_SEPARATOR)));
+        }
+    }
+
+    /**
+     * Rebuilds every document of an index written by an older version of JNotes, so that it gets the fields the current
+     * version searches on. Documents are re-added in their current order as getAll relies on it.
+     */
+    private void upgradeIndexIfRequired() throws IOException {
+        int indexVersion = getIndexVersion();
+        if (indexVersion >= INDEX_VERSION) {
+            return;
+        }
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            if (reader.numDocs() > 0) {
+                System.out.println("Upgrading index of notebook :" + notebook + " from version " + indexVersion + " to " + INDEX_VERSION);
+            }
+            for (LeafReaderContext leaf : reader.leaves()) {
+                LeafReader leafReader = leaf.reader();
+                Bits liveDocs = leafReader.getLiveDocs();
+                // Version 2 has the exact millis as doc values, version 1 only the string with second precision
+                NumericDocValues lastModifiedMillis = leafReader.getNumericDocValues(LAST_MODIFIED_MILLIS_COL_NAME);
+                for (int docId = 0; docId < leafReader.maxDoc(); docId++) {
+                    if (liveDocs == null || liveDocs.get(docId)) {
+                        Document document = leafReader.document(docId);
+                        NoteEntry noteEntry = toNoteEntry(document);
+                        if (lastModifiedMillis != null && lastModifiedMillis.advanceExact(docId)) {
+                            noteEntry.setLastModifiedMillis(lastModifiedMillis.longValue());
+                        }
+                        // The old document has to be found by its id as it was indexed
+                        Term oldIdTerm = document.getBinaryValue(ID_COL_NAME) != null ? idTerm(noteEntry)
+                                : new Term(ID_COL_NAME, noteEntry.getId());
+                        writer.updateDocument(oldIdTerm, fromNoteEntry(noteEntry));
+                    }
+                }
+            }
+        }
+        writer.setLiveCommitData(getCommitData().entrySet());
+        writer.commit();
+    }
+
+    private static final class LastSearch {
+        private final IndexReader.CacheKey readerKey;
+        private final String searchParam;
+        private final boolean searchInfo;
+        private final int maxResults;
+        private final ScoreDoc[] scoreDocs;
+
+        private LastSearch(IndexSearcher searcher, String searchParam, boolean searchInfo, int maxResults, ScoreDoc[] scoreDocs) {
+            this.readerKey = searcher.getIndexReader().getReaderCacheHelper().getKey();
+            this.searchParam = searchParam;
+            this.searchInfo = searchInfo;
+            this.maxResults = maxResults;
+            this.scoreDocs = scoreDocs;
+        }
+
+        /**
+         * Doc ids are only valid for the same reader, and a search cut at maxResults may have left out hits.
+         */
+        private boolean canBeRefinedTo(IndexSearcher searcher, String newSearchParam, boolean newSearchInfo, int newMaxResults) {
+            return readerKey == searcher.getIndexReader().getReaderCacheHelper().getKey() && searchInfo == newSearchInfo
+                    && maxResults == newMaxResults && scoreDocs.length < maxResults && newSearchParam.contains(searchParam);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.dao.local.lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.ngram.NGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+/**
+ * Tokenizes like StandardAnalyzer and then indexes every substring (of up to maxGram chars) of each token. A substring
+ * search then becomes a single term lookup instead of a leading wildcard scan of the term dictionary.
+ * 
+ * @author Joy C
+ *
+ */
+public final class NGramAnalyzer extends Analyzer {
+
+    private final int minGram;
+    private final int maxGram;
+
+    public NGramAnalyzer(int minGram, int maxGram) {
+        this.minGram = minGram;
+        this.maxGram = maxGram;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        StandardTokenizer tokenizer = new StandardTokenizer();
+        TokenStream tokenStream = new LowerCaseFilter(tokenizer);
+        // preserveOriginal keeps tokens longer than maxGram searchable as a whole
+        tokenStream = new NGramTokenFilter(tokenStream, minGram, maxGram, true);
+        return new TokenStreamComponents(tokenizer, tokenStream);
+    }
+
+}
@@ -6,20 +6,23 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 import org.apache.commons.codec.binary.Base64;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.jc.jnotes.JNotesConstants;
 import com.jc.jnotes.dao.DaoRuntimeException;
 import com.jc.jnotes.model.NewUserRequest;
@@ -33,6 +36,8 @@ public class DefaultRemoteNoteEntryDao implements RemoteNoteEntryDao {
     private final String userSecret;
     private final HttpHeaders httpHeaders;
     private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper objectMapper = RemoteJson.createObjectMapper();
+    private final GzipInterceptor gzipInterceptor = new GzipInterceptor();
 
     private static final int DAO_TYPE = DaoRuntimeException.REMOTE;
 
@@ -41,17 +46,17 @@ public class DefaultRemoteNoteEntryDao implements RemoteNoteEntryDao {
         this.userSecret = userSecret;
         this.httpHeaders = createHeaders(userId, userSecret);
         
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        objectMapper.registerModule(new JavaTimeModule());
-        //objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-
         MappingJackson2HttpMessageConverter messageConverter = new MappingJackson2HttpMessageConverter();
         messageConverter.setObjectMapper(objectMapper);
        // messageConverter.setSupportedMediaTypes(Collections.singletonList(MediaTypes.HAL_JSON));
 
         this.restTemplate.setMessageConverters(Collections.singletonList(messageConverter));
+        this.restTemplate.setInterceptors(Collections.singletonList(gzipInterceptor));
+    }
+
+    @Override
+    public TransferStats getTransferStats() {
+        return gzipInterceptor.getTransferStats();
     }
 
     private HttpHeaders createHeaders(String userId, String userSecret) {
@@ -104,6 +109,17 @@ public class DefaultRemoteNoteEntryDao implements RemoteNoteEntryDao {
         }
     }
 
+    // /backupNotes adds or replaces each note by id, so one backup call serves both batch operations
+    @Override
+    public void addNoteEntries(List<NoteEntry> noteEntries) {
+        this.backup(noteEntries);
+    }
+
+    @Override
+    public void upsertNoteEntries(List<NoteEntry> noteEntries) {
+        this.backup(noteEntries);
+    }
+
     @Override
     public void deleteNoteEntry(NoteEntry noteEntry) {
         List<NoteEntry> noteEntries = new ArrayList<>();
@@ -198,20 +214,38 @@ public class DefaultRemoteNoteEntryDao implements RemoteNoteEntryDao {
     @Override
     public Map<String, List<NoteEntry>> restore() {
         Map<String, List<NoteEntry>> notebookMap = new HashMap<>();
+        restore(Integer.MAX_VALUE, (notebook, noteEntries) -> notebookMap.put(notebook, noteEntries), (progress) -> {
+        });
+        return notebookMap;
+    }
+
+    @Override
+    public void restore(int batchSize, BiConsumer<String, List<NoteEntry>> batchConsumer, Consumer<Long> progressConsumer) {
         try {
-            ResponseEntity<Notes> response = restTemplate.exchange(JNotesConstants.REMOTE_URL + "/getUserNotes", HttpMethod.GET,
-                    new HttpEntity<>(httpHeaders), Notes.class);
-            if (HttpStatus.OK.equals(response.getStatusCode())) {
-                Notes notes = response.getBody();
-                if (notes != null && notes.getNoteEntries() != null && !notes.getNoteEntries().isEmpty()) {
-                    notes.getNoteEntries().stream().forEach((noteEntry) -> notebookMap
-                            .computeIfAbsent(noteEntry.getNotebook(), (k) -> new ArrayList<NoteEntry>()).add(noteEntry));
-                }
-            }
+            restTemplate.execute(JNotesConstants.REMOTE_URL + "/getUserNotes", HttpMethod.GET,
+                    (request) -> {
+                        request.getHeaders().putAll(httpHeaders);
+                        request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+                    }, (response) -> {
+                        try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+                            // Progress is measured on the body as sent, which may be compressed
+                            long contentLength;
+                            LongSupplier bytesRead;
+                            if (response instanceof GzipInterceptor.CountingResponse) {
+                                GzipInterceptor.CountingResponse countingResponse = (GzipInterceptor.CountingResponse) response;
+                                contentLength = countingResponse.getContentLength();
+                                bytesRead = countingResponse::getBytesRead;
+                            } else {
+                                contentLength = response.getHeaders().getContentLength();
+                                bytesRead = () -> parser.currentLocation().getByteOffset();
+                            }
+                            RemoteJson.readNoteEntries(objectMapper, parser, contentLength, bytesRead, batchSize, batchConsumer, progressConsumer);
+                        }
+                        return null;
+                    });
         } catch (Exception ex) {
             throw new DaoRuntimeException(DAO_TYPE, "Failed to restore", ex);
         }
-        return notebookMap;
     }
 
 }
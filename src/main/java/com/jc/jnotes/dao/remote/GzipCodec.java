@@ -0,0 +1,183 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of request and response bodies, and the count of the bytes transferred, shared by the Remote Dao
+ * transports. One instance per Dao.
+ * <p>
+ * Responses are only compressed when the server chooses to. HTTP has no way to ask whether a server takes compressed
+ * requests, so they are sent compressed until the server rejects one: 415 as per RFC 7694, or 400 along with an
+ * Accept-Encoding which does not list gzip. Any other 400 is about the request itself. The transport then sends that
+ * request again uncompressed and, if that succeeds, requests are no longer compressed.
+ *
+ * @author Joy C
+ *
+ */
+final class GzipCodec {
+
+    static final String GZIP = "gzip";
+    static final int MIN_COMPRESSED_BODY_BYTES = 1024; // Smaller bodies are not worth compressing
+
+    private volatile boolean compressRequests = true;
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong rawBytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong rawBytesReceived = new AtomicLong();
+
+    /**
+     * 
+     * @return true if a request body of this length is to be sent compressed
+     */
+    boolean isToBeCompressed(int bodyLength) {
+        return compressRequests && bodyLength >= MIN_COMPRESSED_BODY_BYTES;
+    }
+
+    /**
+     * Called when a request rejected compressed has been accepted uncompressed.
+     */
+    void uncompressedAccepted() {
+        if (compressRequests) {
+            System.out.println("Remote store does not take compressed requests, sending them uncompressed");
+            compressRequests = false;
+        }
+    }
+
+    /**
+     * 
+     * @param acceptEncoding
+     *            - Accept-Encoding header of the response, null if there is none
+     * @return true if a compressed request got this response because the server does not take compressed requests
+     */
+    static boolean isRejected(int statusCode, String acceptEncoding) {
+        if (statusCode == 415) {
+            return true;
+        }
+        // RFC 7694: the server lists in Accept-Encoding the codings it takes
+        return statusCode == 400 && acceptEncoding != null && !acceptEncoding.toLowerCase(Locale.ROOT).contains(GZIP);
+    }
+
+    /**
+     * 
+     * @param contentEncoding
+     *            - Content-Encoding header of the response, null if there is none
+     */
+    static boolean isCompressed(String contentEncoding) {
+        return GZIP.equalsIgnoreCase(contentEncoding);
+    }
+
+    static byte[] compress(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    void countSent(long bytes, long rawBytes) {
+        bytesSent.addAndGet(bytes);
+        rawBytesSent.addAndGet(rawBytes);
+    }
+
+    /**
+     * Wraps a response body so that reading it counts the bytes received, and decompresses it if it is compressed.
+     * Reading the gzip header blocks, so this is to be called on the thread which reads the body.
+     * 
+     * @param bytesRead
+     *            - also told the bytes read as received, compressed or not
+     */
+    InputStream decode(InputStream body, boolean compressed, AtomicLong bytesRead) throws IOException {
+        InputStream decoded = new CountingInputStream(body, bytesRead, bytesReceived);
+        if (compressed) {
+            decoded = new GZIPInputStream(decoded);
+        }
+        return new CountingInputStream(decoded, rawBytesReceived);
+    }
+
+    /**
+     * 
+     * @return the body decompressed if it is compressed, counted as received
+     */
+    byte[] decode(byte[] body, boolean compressed) throws IOException {
+        if (body.length == 0) {
+            return body;
+        }
+        try (InputStream decoded = decode(new ByteArrayInputStream(body), compressed, new AtomicLong())) {
+            return decoded.readAllBytes();
+        }
+    }
+
+    TransferStats getTransferStats() {
+        return new TransferStats(bytesSent.get(), rawBytesSent.get(), bytesReceived.get(), rawBytesReceived.get());
+    }
+
+    static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong[] counters;
+
+        CountingInputStream(InputStream in, AtomicLong... counters) {
+            super(in);
+            this.counters = counters;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                count(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) {
+            for (AtomicLong counter : counters) {
+                counter.addAndGet(bytes);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import static com.jc.jnotes.dao.remote.GzipCodec.GZIP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Gzip compresses request bodies and asks for gzip compressed responses, as described in GzipCodec.
+ * <p>
+ * Responses are decompressed here. A compressed request which is rejected is sent again uncompressed.
+ *
+ * @author Joy C
+ *
+ */
+class GzipInterceptor implements ClientHttpRequestInterceptor {
+
+    private final GzipCodec codec = new GzipCodec();
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        HttpHeaders headers = request.getHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        ClientHttpResponse response;
+        if (codec.isToBeCompressed(body.length)) {
+            byte[] compressedBody = GzipCodec.compress(body);
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            headers.setContentLength(compressedBody.length);
+            response = execution.execute(request, compressedBody);
+            if (GzipCodec.isRejected(response.getStatusCode().value(), response.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING))) {
+                response.close();
+                headers.remove(HttpHeaders.CONTENT_ENCODING);
+                headers.setContentLength(body.length);
+                response = execution.execute(request, body);
+                if (response.getStatusCode().is2xxSuccessful()) {
+                    codec.uncompressedAccepted();
+                }
+                codec.countSent(compressedBody.length + body.length, body.length);
+            } else {
+                codec.countSent(compressedBody.length, body.length);
+            }
+        } else {
+            response = execution.execute(request, body);
+            codec.countSent(body.length, body.length);
+        }
+        return new CountingResponse(response);
+    }
+
+    public TransferStats getTransferStats() {
+        return codec.getTransferStats();
+    }
+
+    /**
+     * Counts the bytes read from the connection and, when the body is gzip compressed, the bytes it decompresses to.
+     */
+    class CountingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final boolean compressed;
+        private final long contentLength;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private InputStream body;
+
+        private CountingResponse(ClientHttpResponse response) {
+            this.response = response;
+            this.headers.putAll(response.getHeaders());
+            this.compressed = GzipCodec.isCompressed(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+            this.contentLength = headers.getContentLength();
+            if (compressed) {
+                // What is read from getBody() is no longer compressed, and its length is not known
+                this.headers.remove(HttpHeaders.CONTENT_ENCODING);
+                this.headers.remove(HttpHeaders.CONTENT_LENGTH);
+            }
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = codec.decode(response.getBody(), compressed, bytesRead);
+            }
+            return body;
+        }
+
+        /**
+         *
+         * @return length of the body as sent, compressed or not. -1 if not known.
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        /**
+         *
+         * @return bytes of the body read so far as sent, compressed or not
+         */
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+
+    }
+
+}
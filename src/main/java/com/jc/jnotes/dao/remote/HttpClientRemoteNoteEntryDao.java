@@ -0,0 +1,368 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import static com.jc.jnotes.JNotesConstants.REMOTE_CONNECT_TIMEOUT_MILLIS;
+import static com.jc.jnotes.JNotesConstants.REMOTE_READ_TIMEOUT_MILLIS;
+import static com.jc.jnotes.JNotesConstants.REMOTE_URL;
+import static com.jc.jnotes.dao.remote.GzipCodec.GZIP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jc.jnotes.dao.DaoRuntimeException;
+import com.jc.jnotes.model.NewUserRequest;
+import com.jc.jnotes.model.NoteEntry;
+import com.jc.jnotes.model.NotebookRequest;
+import com.jc.jnotes.model.Notes;
+
+/**
+ * Remote Dao on java.net.http.HttpClient. Writes are asynchronous (the ...Async methods), the synchronous methods wait
+ * for them.
+ * <p>
+ * The client keeps connections alive and reuses them, and talks HTTP/2 to servers which support it (negotiated during
+ * the TLS handshake), HTTP/1.1 otherwise. Bodies are gzip compressed by GzipCodec, as by DefaultRemoteNoteEntryDao.
+ *
+ * @author Joy C
+ *
+ */
+public class HttpClientRemoteNoteEntryDao implements RemoteNoteEntryDao {
+
+    private final String baseUrl;
+    private final String userId;
+    private final String userSecret;
+    private final String authorization;
+    private final Duration readTimeout;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = RemoteJson.createObjectMapper();
+
+    private final GzipCodec codec = new GzipCodec();
+
+    private static final int DAO_TYPE = DaoRuntimeException.REMOTE;
+
+    public HttpClientRemoteNoteEntryDao(String userId, String userSecret) {
+        this(REMOTE_URL, userId, userSecret, REMOTE_CONNECT_TIMEOUT_MILLIS, REMOTE_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     *
+     * @param readTimeoutMillis
+     *            - time allowed for a response to start arriving once the request is sent
+     */
+    public HttpClientRemoteNoteEntryDao(String baseUrl, String userId, String userSecret, long connectTimeoutMillis,
+            long readTimeoutMillis) {
+        this.baseUrl = baseUrl;
+        this.userId = userId;
+        this.userSecret = userSecret;
+        String auth = userId + ":" + userSecret;
+        this.authorization = "JNOTES " + Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis)).build();
+    }
+
+    @Override
+    public List<NoteEntry> getAll(String notebook) {
+        String path = "/getUserNotes?notebook=" + URLEncoder.encode(notebook, StandardCharsets.UTF_8);
+        return join(send("GET", path, null, true).thenApply((reply) -> {
+            checkSuccess(reply);
+            if (reply.body.length == 0) {
+                return Collections.<NoteEntry> emptyList();
+            }
+            try {
+                Notes notes = objectMapper.readValue(reply.body, Notes.class);
+                return notes == null || notes.getNoteEntries() == null ? Collections.<NoteEntry> emptyList() : notes.getNoteEntries();
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }), "Failed to getAll for notebook:" + notebook);
+    }
+
+    @Override
+    public void addNoteEntry(NoteEntry noteEntry) {
+        join(addNoteEntryAsync(noteEntry), "Failed to add note");
+    }
+
+    @Override
+    public CompletableFuture<Void> addNoteEntryAsync(NoteEntry noteEntry) {
+        return post("/addNote", noteEntry, "Failed to add note");
+    }
+
+    @Override
+    public void editNoteEntry(NoteEntry noteEntry) {
+        join(editNoteEntryAsync(noteEntry), "Failed to edit note");
+    }
+
+    @Override
+    public CompletableFuture<Void> editNoteEntryAsync(NoteEntry noteEntry) {
+        return post("/editNote", noteEntry, "Failed to edit note");
+    }
+
+    // /backupNotes adds or replaces each note by id, so one backup call serves both batch operations
+    @Override
+    public void addNoteEntries(List<NoteEntry> noteEntries) {
+        this.backup(noteEntries);
+    }
+
+    @Override
+    public void upsertNoteEntries(List<NoteEntry> noteEntries) {
+        this.backup(noteEntries);
+    }
+
+    @Override
+    public void deleteNoteEntry(NoteEntry noteEntry) {
+        this.deleteNoteEntries(List.of(noteEntry));
+    }
+
+    @Override
+    public void deleteNoteEntries(List<NoteEntry> noteEntries) {
+        join(deleteNoteEntriesAsync(noteEntries), "Failed to delete notes");
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteNoteEntriesAsync(List<NoteEntry> noteEntries) {
+        return post("/deleteNotes", new Notes(noteEntries), "Failed to delete notes");
+    }
+
+    @Override
+    public boolean setupUser(String userId) {
+        NewUserRequest newUserRequest = new NewUserRequest(userId, this.userSecret);
+        return join(send("POST", "/setupUser", newUserRequest, false).thenApply((reply) -> {
+            if (reply.statusCode == 409) {
+                return false;
+            }
+            checkSuccess(reply);
+            return true;
+        }), "Failed to setup user: " + userId);
+    }
+
+    @Override
+    public void backup(List<NoteEntry> noteEntries) {
+        join(backupAsync(noteEntries), "Failed to backup");
+    }
+
+    @Override
+    public CompletableFuture<Void> backupAsync(List<NoteEntry> noteEntries) {
+        return post("/backupNotes", new Notes(noteEntries), "Failed to backup");
+    }
+
+    @Override
+    public void deleteNotebook(String notebookToBeDeleted) {
+        join(post("/deleteNotebook", new NotebookRequest(notebookToBeDeleted), "Failed to delete book:" + notebookToBeDeleted),
+                "Failed to delete book:" + notebookToBeDeleted);
+    }
+
+    @Override
+    public void renameNotebook(String notebookToBeRenamed, String notebookNewName) {
+        join(post("/renameNotebook", new NotebookRequest(notebookToBeRenamed, notebookNewName),
+                "Failed to rename book:" + notebookToBeRenamed), "Failed to rename book:" + notebookToBeRenamed);
+    }
+
+    @Override
+    public int validateUserSecret() {
+        return join(send("GET", "/authenticateUser", null, true).thenApply((reply) -> {
+            if (reply.statusCode == 404) {
+                return 1;
+            } else if (reply.statusCode == 401) {
+                return 2;
+            }
+            checkSuccess(reply);
+            return 0;
+        }), "Failed to validateUserSecret : " + userId);
+    }
+
+    @Override
+    public Map<String, List<NoteEntry>> restore() {
+        Map<String, List<NoteEntry>> notebookMap = new HashMap<>();
+        restore(Integer.MAX_VALUE, (notebook, noteEntries) -> notebookMap.put(notebook, noteEntries), (progress) -> {
+        });
+        return notebookMap;
+    }
+
+    @Override
+    public void restore(int batchSize, BiConsumer<String, List<NoteEntry>> batchConsumer, Consumer<Long> progressConsumer) {
+        try {
+            HttpRequest request = newRequest("/getUserNotes", true).GET().build();
+            HttpResponse<InputStream> response = httpClient.send(request, BodyHandlers.ofInputStream());
+            AtomicLong bytesRead = new AtomicLong();
+            InputStream body = response.body();
+            try {
+                if (response.statusCode() / 100 != 2) {
+                    throw new DaoRuntimeException(DAO_TYPE, "Remote store answered " + response.statusCode());
+                }
+                body = codec.decode(body, isCompressed(response), bytesRead);
+                long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+                    RemoteJson.readNoteEntries(objectMapper, parser, contentLength, bytesRead::get, batchSize, batchConsumer,
+                            progressConsumer);
+                }
+            } finally {
+                body.close();
+            }
+        } catch (DaoRuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new DaoRuntimeException(DAO_TYPE, "Failed to restore", ex);
+        }
+    }
+
+    @Override
+    public TransferStats getTransferStats() {
+        return codec.getTransferStats();
+    }
+
+    private CompletableFuture<Void> post(String path, Object body, String failureMessage) {
+        return send("POST", path, body, true).handle((reply, ex) -> {
+            if (ex != null) {
+                throw toDaoRuntimeException(ex, failureMessage);
+            }
+            if (reply.statusCode / 100 != 2) {
+                throw new DaoRuntimeException(DAO_TYPE, failureMessage + ", remote store answered " + reply.statusCode);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sends body as JSON, gzip compressed unless the server has rejected compressed requests before. A compressed
+     * request which is rejected is sent again uncompressed. The body is serialized before this returns, so the caller
+     * may change it afterwards.
+     */
+    private CompletableFuture<Reply> send(String method, String path, Object body, boolean authorized) {
+        if (body == null) {
+            return send(newRequest(path, authorized).method(method, BodyPublishers.noBody()), 0, 0);
+        }
+        byte[] json;
+        byte[] compressedJson = null;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+            if (codec.isToBeCompressed(json.length)) {
+                compressedJson = GzipCodec.compress(json);
+            }
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        if (compressedJson == null) {
+            return send(newJsonRequest(method, path, authorized, json, false), json.length, json.length);
+        }
+        return send(newJsonRequest(method, path, authorized, compressedJson, true), compressedJson.length, json.length)
+                .thenCompose((reply) -> {
+                    if (!GzipCodec.isRejected(reply.statusCode, reply.acceptEncoding)) {
+                        return CompletableFuture.completedFuture(reply);
+                    }
+                    return send(newJsonRequest(method, path, authorized, json, false), json.length, json.length).thenApply((retried) -> {
+                        if (retried.statusCode / 100 == 2) {
+                            codec.uncompressedAccepted();
+                        }
+                        return retried;
+                    });
+                });
+    }
+
+    private CompletableFuture<Reply> send(HttpRequest.Builder requestBuilder, long bodyBytes, long rawBodyBytes) {
+        codec.countSent(bodyBytes, rawBodyBytes);
+        return httpClient.sendAsync(requestBuilder.build(), BodyHandlers.ofByteArray()).thenApply((response) -> {
+            byte[] body;
+            try {
+                body = codec.decode(response.body(), isCompressed(response));
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+            return new Reply(response.statusCode(), body, response.headers().firstValue("Accept-Encoding").orElse(null));
+        });
+    }
+
+    private HttpRequest.Builder newRequest(String path, boolean authorized) {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(readTimeout)
+                .header("Accept", "application/json").header("Accept-Encoding", GZIP);
+        if (authorized) {
+            requestBuilder.header("Authorization", authorization);
+        }
+        return requestBuilder;
+    }
+
+    private HttpRequest.Builder newJsonRequest(String method, String path, boolean authorized, byte[] body, boolean compressed) {
+        HttpRequest.Builder requestBuilder = newRequest(path, authorized).header("Content-Type", "application/json")
+                .method(method, BodyPublishers.ofByteArray(body));
+        if (compressed) {
+            requestBuilder.header("Content-Encoding", GZIP);
+        }
+        return requestBuilder;
+    }
+
+    private static boolean isCompressed(HttpResponse<?> response) {
+        return GzipCodec.isCompressed(response.headers().firstValue("Content-Encoding").orElse(null));
+    }
+
+    private static void checkSuccess(Reply reply) {
+        if (reply.statusCode / 100 != 2) {
+            throw new DaoRuntimeException(DAO_TYPE, "Remote store answered " + reply.statusCode);
+        }
+    }
+
+    private static DaoRuntimeException toDaoRuntimeException(Throwable ex, String failureMessage) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof DaoRuntimeException) {
+            return (DaoRuntimeException) cause;
+        }
+        return new DaoRuntimeException(DAO_TYPE, failureMessage, cause);
+    }
+
+    private static <T> T join(CompletableFuture<T> future, String failureMessage) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw toDaoRuntimeException(ex, failureMessage);
+        }
+    }
+
+    private static final class Reply {
+        private final int statusCode;
+        private final byte[] body;
+        private final String acceptEncoding; // null if the server did not send one
+
+        private Reply(int statusCode, byte[] body, String acceptEncoding) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.acceptEncoding = acceptEncoding;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.jc.jnotes.model.NoteEntry;
+
+/**
+ * JSON handling shared by the Remote Dao transports.
+ *
+ * @author Joy C
+ *
+ */
+final class RemoteJson {
+
+    private RemoteJson() {
+    }
+
+    static ObjectMapper createObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        //objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        return objectMapper;
+    }
+
+    /**
+     * Reads the noteEntries array of a Notes document one entry at a time.
+     * 
+     * @param contentLength
+     *            - bytes to be read, -1 if not known
+     * @param bytesRead
+     *            - bytes read so far, in the same terms as contentLength
+     */
+    static void readNoteEntries(ObjectMapper objectMapper, JsonParser parser, long contentLength, LongSupplier bytesRead, int batchSize, BiConsumer<String, List<NoteEntry>> batchConsumer,
+            Consumer<Long> progressConsumer) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return; // no notes
+        }
+        Map<String, List<NoteEntry>> batches = new HashMap<>();
+        long lastProgress = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!"noteEntries".equals(fieldName) || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                NoteEntry noteEntry = objectMapper.readValue(parser, NoteEntry.class);
+                List<NoteEntry> batch = batches.computeIfAbsent(noteEntry.getNotebook(), (k) -> new ArrayList<>());
+                batch.add(noteEntry);
+                if (batch.size() >= batchSize) {
+                    batches.remove(noteEntry.getNotebook());
+                    batchConsumer.accept(noteEntry.getNotebook(), batch);
+                }
+                if (contentLength > 0) {
+                    // 100 is left for the caller, once it is done with the batches
+                    long progress = Math.min(99, bytesRead.getAsLong() * 100 / contentLength);
+                    if (progress != lastProgress) {
+                        progressConsumer.accept(progress);
+                        lastProgress = progress;
+                    }
+                }
+            }
+        }
+        batches.forEach(batchConsumer);
+    }
+
+}
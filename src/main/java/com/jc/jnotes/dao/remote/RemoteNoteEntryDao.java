@@ -20,6 +20,9 @@ package com.jc.jnotes.dao.remote;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import com.jc.jnotes.dao.NoteEntryDao;
 import com.jc.jnotes.model.NoteEntry;
@@ -37,6 +40,35 @@ public interface RemoteNoteEntryDao extends NoteEntryDao {
 
     void backup(List<NoteEntry> noteEntries);
 
+    /**
+     * Asynchronous version of addNoteEntry. This default one runs addNoteEntry on the calling thread, Dao's with a
+     * non-blocking transport override it and the other ...Async methods.
+     */
+    default CompletableFuture<Void> addNoteEntryAsync(NoteEntry noteEntry) {
+        return runNow(() -> addNoteEntry(noteEntry));
+    }
+
+    default CompletableFuture<Void> editNoteEntryAsync(NoteEntry noteEntry) {
+        return runNow(() -> editNoteEntry(noteEntry));
+    }
+
+    default CompletableFuture<Void> deleteNoteEntriesAsync(List<NoteEntry> noteEntries) {
+        return runNow(() -> deleteNoteEntries(noteEntries));
+    }
+
+    default CompletableFuture<Void> backupAsync(List<NoteEntry> noteEntries) {
+        return runNow(() -> backup(noteEntries));
+    }
+
+    private static CompletableFuture<Void> runNow(Runnable runnable) {
+        try {
+            runnable.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
     void deleteNotebook(String notebookToBeDeleted);
     void renameNotebook(String notebookToBeRenamed, String notebookNewName);
 
@@ -49,6 +81,26 @@ public interface RemoteNoteEntryDao extends NoteEntryDao {
      */
     int validateUserSecret();
 
+    /**
+     * Reads all notes of the user at once, prefer restore(batchSize, batchConsumer, progressConsumer) for large accounts.
+     * 
+     * @return notes by notebook
+     */
     Map<String, List<NoteEntry>> restore();
 
+    /**
+     * 
+     * @return bytes transferred by this Dao so far, compressed and raw
+     */
+    TransferStats getTransferStats();
+
+    /**
+     * Streams all notes of the user, handing them to batchConsumer as they are read, at most batchSize entries of one
+     * notebook at a time. Only the batches being filled are held in memory.
+     * 
+     * @param progressConsumer
+     *            - told the percentage of the notes read so far, when the remote store tells how much there is to read
+     */
+    void restore(int batchSize, BiConsumer<String, List<NoteEntry>> batchConsumer, Consumer<Long> progressConsumer);
+
 }
\ No newline at end of file
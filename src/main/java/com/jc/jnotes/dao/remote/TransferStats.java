@@ -0,0 +1,73 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+/**
+ * Bytes of request and response bodies transferred by a Remote Dao: as sent over the network (compressed or not) and
+ * uncompressed (raw).
+ *
+ * @author Joy C
+ *
+ */
+public final class TransferStats {
+
+    private final long bytesSent;
+    private final long rawBytesSent;
+    private final long bytesReceived;
+    private final long rawBytesReceived;
+
+    public TransferStats(long bytesSent, long rawBytesSent, long bytesReceived, long rawBytesReceived) {
+        this.bytesSent = bytesSent;
+        this.rawBytesSent = rawBytesSent;
+        this.bytesReceived = bytesReceived;
+        this.rawBytesReceived = rawBytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getRawBytesSent() {
+        return rawBytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getRawBytesReceived() {
+        return rawBytesReceived;
+    }
+
+    /**
+     * 
+     * @return bytes transferred since earlier was taken
+     */
+    public TransferStats minus(TransferStats earlier) {
+        return new TransferStats(bytesSent - earlier.bytesSent, rawBytesSent - earlier.rawBytesSent, bytesReceived - earlier.bytesReceived,
+                rawBytesReceived - earlier.rawBytesReceived);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Sent: %d bytes (%d raw) Received: %d bytes (%d raw)", bytesSent, rawBytesSent, bytesReceived,
+                rawBytesReceived);
+    }
+
+}
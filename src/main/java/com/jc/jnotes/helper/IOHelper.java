@@ -21,18 +21,19 @@ package com.jc.jnotes.helper;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.jc.jnotes.UserPreferences;
+import com.jc.jnotes.dao.NoteEntryDao;
 import com.jc.jnotes.model.NoteEntry;
-import javafx.collections.ObservableList;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -67,16 +68,24 @@ public class IOHelper {
     private final static String JSON_ROOT = "jnotes";
 
     /**
-     * @param observableNoteEntryList
+     * Writes the notes of the notebook as a JSON array, one page at a time.
+     *
+     * @param noteEntryDao
+     * @param notebook
      * @return String value of the Path of the exported file. null if export failed.
      */
-    public String exportNotebook(final ObservableList<NoteEntry> observableNoteEntryList) {
+    public String exportNotebook(final NoteEntryDao noteEntryDao, final String notebook) {
         final Path exportPath = getExportFilePath();
         String exportPathStr = exportPath.toString();
-        try (PrintWriter exportFile = new PrintWriter(exportPath.toString(), "UTF-8")) {
-            ObjectWriter ow = getObjectMapper().writer().withDefaultPrettyPrinter();
-            String json = ow.writeValueAsString(observableNoteEntryList);
-            exportFile.println(json);
+        try (PrintWriter exportFile = new PrintWriter(exportPath.toString(), "UTF-8");
+                SequenceWriter sequenceWriter = getObjectMapper().writer().withDefaultPrettyPrinter().writeValuesAsArray(exportFile)) {
+            noteEntryDao.forEachPage(notebook, NOTES_PAGE_SIZE, (noteEntries) -> {
+                try {
+                    sequenceWriter.writeAll(noteEntries);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
         } catch (Exception ex) {
             ex.printStackTrace();
             exportPathStr = null;
@@ -18,16 +18,28 @@
  */
 package com.jc.jnotes.model;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
@@ -52,16 +64,37 @@ public class NoteEntry implements Comparable<NoteEntry> {
 
     private static Comparator<NoteEntry> keyComparator = Comparator.comparing(NoteEntry::getKey, nullSafeStringComparator);
 
-    private String id;
-    private StringProperty key;
-    private StringProperty value;
-    private StringProperty info;
-    private StringProperty passwordFlag;
-    private ObjectProperty<LocalDateTime> lastModifiedTime;
+    // A UUID id, which every generated id is, is kept as its two halves. Any other id is kept as it is in idText.
+    private boolean uuidId;
+    private long idHigh;
+    private long idLow;
+    private String idText;
+    // Plain values until a property is asked for, which the notes table only does for the rows it shows. DAO, sync and
+    // IO paths never ask, so the many notes they hold stay small.
+    private String key;
+    private String value;
+    private String info;
+    private String passwordFlag;
+    // Epoch millis, LocalDateTime is only made for JSON and display
+    private long lastModifiedMillis;
+    private StringProperty keyProperty;
+    private StringProperty valueProperty;
+    private StringProperty infoProperty;
+    private StringProperty passwordFlagProperty;
+    private ReadOnlyObjectWrapper<LocalDateTime> lastModifiedTimeProperty;
+    private ReadOnlyStringWrapper displayValue;
+    // When set, info has not been read yet and is read through this on first access
+    private Supplier<String> infoLoader;
     // These are not persisted in Local store, only persisted in Remote store
     private String notebook;
     private boolean isPassword;
 
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final int UUID_BYTES = 16;
+    // Never found in UTF-8, marks a non UUID id whose bytes would otherwise read back as a UUID
+    private static final byte TEXT_ID_PADDING = (byte) 0xFF;
+
     public static String generateID() {
         return UUID.randomUUID().toString();
     }
@@ -72,113 +105,284 @@ public class NoteEntry implements Comparable<NoteEntry> {
     }
 
     public NoteEntry(String notebook, String id, String key, String value, String info, String passwordFlag) {
-        this(notebook, id, key, value, info, passwordFlag, LocalDateTime.now());
+        this(notebook, id, key, value, info, passwordFlag, System.currentTimeMillis());
     }
 
     public NoteEntry(String notebook, String id, String key, String value, String info, String passwordFlag,
             LocalDateTime lastModifiedTime) {
-        this.id = id;
-        this.key = new SimpleStringProperty(key == null ? StringUtils.EMPTY : key);
-        this.value = new SimpleStringProperty(value == null ? StringUtils.EMPTY : value);
-        this.info = new SimpleStringProperty(info == null ? StringUtils.EMPTY : info);
+        this(notebook, id, key, value, info, passwordFlag, toEpochMillis(lastModifiedTime));
+    }
+
+    public NoteEntry(String notebook, String id, String key, String value, String info, String passwordFlag,
+            long lastModifiedMillis) {
+        setId(id);
+        this.key = key == null ? StringUtils.EMPTY : key;
+        this.value = value == null ? StringUtils.EMPTY : value;
+        this.info = info == null ? StringUtils.EMPTY : info;
         if(StringUtils.isBlank(passwordFlag) || "N".equalsIgnoreCase(passwordFlag.trim())) {
             passwordFlag = "N";
         } else {
             passwordFlag = "Y";
         }
-        this.passwordFlag = new SimpleStringProperty(passwordFlag);
-        this.lastModifiedTime = new SimpleObjectProperty<LocalDateTime>(lastModifiedTime);
+        this.passwordFlag = passwordFlag;
+        this.lastModifiedMillis = lastModifiedMillis;
         this.isPassword = "N".equals(passwordFlag) ? false : true;
         this.notebook = notebook;
     }
 
     public String getId() {
-        return id;
+        return uuidId ? new UUID(idHigh, idLow).toString() : idText;
+    }
+
+    @JsonProperty("id")
+    private void setId(String id) {
+        UUID uuid = toUUID(id);
+        this.uuidId = uuid != null;
+        this.idHigh = uuid != null ? uuid.getMostSignificantBits() : 0;
+        this.idLow = uuid != null ? uuid.getLeastSignificantBits() : 0;
+        this.idText = uuid != null ? null : id;
+    }
+
+    // Only the canonical lower case form, so that getId gives back exactly what was set
+    private static UUID toUUID(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Compact form of the id for storage: 16 bytes for a UUID id, the UTF-8 bytes otherwise.
+     */
+    @JsonIgnore
+    public byte[] getIdBytes() {
+        return uuidId ? toIdBytes(idHigh, idLow) : toIdBytes(idText);
+    }
+
+    /**
+     * Same as getIdBytes, for an id that is only at hand as a string.
+     */
+    public static byte[] toIdBytes(String id) {
+        UUID uuid = toUUID(id);
+        if (uuid != null) {
+            return toIdBytes(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+        if (id == null) {
+            return null;
+        }
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == UUID_BYTES) {
+            bytes = Arrays.copyOf(bytes, UUID_BYTES + 1);
+            bytes[UUID_BYTES] = TEXT_ID_PADDING;
+        }
+        return bytes;
+    }
+
+    private static byte[] toIdBytes(long high, long low) {
+        return ByteBuffer.allocate(UUID_BYTES).putLong(high).putLong(low).array();
+    }
+
+    /**
+     * Sets the id from the form given by getIdBytes, without going through its string form.
+     */
+    @JsonIgnore
+    public void setIdBytes(byte[] bytes, int offset, int length) {
+        if (length == UUID_BYTES) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            this.uuidId = true;
+            this.idHigh = buffer.getLong();
+            this.idLow = buffer.getLong();
+            this.idText = null;
+        } else {
+            if (length == UUID_BYTES + 1 && bytes[offset + UUID_BYTES] == TEXT_ID_PADDING) {
+                length = UUID_BYTES;
+            }
+            setId(new String(bytes, offset, length, StandardCharsets.UTF_8));
+        }
     }
 
     public String getKey() {
-        return key.get();
+        return keyProperty == null ? key : keyProperty.get();
     }
 
     public void setKey(String key) {
         if (key == null) {
             key = "";
         }
-        this.key.set(key);
-        this.lastModifiedTime.set(LocalDateTime.now());
+        if (keyProperty == null) {
+            this.key = key;
+        } else {
+            keyProperty.set(key);
+        }
+        this.setLastModifiedMillis(System.currentTimeMillis());
     }
 
     public StringProperty keyProperty() {
-        return key;
+        if (keyProperty == null) {
+            keyProperty = new SimpleStringProperty(key);
+            key = null;
+        }
+        return keyProperty;
     }
 
     public String getValue() {
-        return value.get();
+        return valueProperty == null ? value : valueProperty.get();
     }
 
     public String getDisplayValue() {
-        if ("Y".equals(passwordFlag.get())) {
-            return "*".repeat(value.get().length());
+        if ("Y".equals(getPasswordFlag())) {
+            return "*".repeat(getValue().length());
+        }
+        return getValue();
+    }
+
+    /**
+     * Follows value and passwordFlag, so that a table cell showing it is updated when either is edited.
+     */
+    public ReadOnlyStringProperty displayValueProperty() {
+        if (displayValue == null) {
+            displayValue = new ReadOnlyStringWrapper();
+            displayValue.bind(Bindings.createStringBinding(this::getDisplayValue, valueProperty(), passwordFlagProperty()));
         }
-        return value.get();
+        return displayValue.getReadOnlyProperty();
     }
 
     public void setValue(String value) {
         if (value == null) {
             value = "";
         }
-        this.value.set(value);
-        this.lastModifiedTime.set(LocalDateTime.now());
+        if (valueProperty == null) {
+            this.value = value;
+        } else {
+            valueProperty.set(value);
+        }
+        this.setLastModifiedMillis(System.currentTimeMillis());
     }
 
     public StringProperty valueProperty() {
-        return value;
+        if (valueProperty == null) {
+            valueProperty = new SimpleStringProperty(value);
+            value = null;
+        }
+        return valueProperty;
     }
 
     public String getInfo() {
-        return info.get();
+        loadInfo();
+        return infoProperty == null ? info : infoProperty.get();
     }
 
     public void setInfo(String info) {
         if (info == null) {
             info = "";
         }
-        this.info.set(info);
-        this.lastModifiedTime.set(LocalDateTime.now());
+        this.infoLoader = null;
+        setLoadedInfo(info);
+        this.setLastModifiedMillis(System.currentTimeMillis());
     }
 
     public StringProperty infoProperty() {
-        return info;
+        loadInfo();
+        if (infoProperty == null) {
+            infoProperty = new SimpleStringProperty(info);
+            info = null;
+        }
+        return infoProperty;
+    }
+
+    /**
+     * Lets a DAO skip reading info until it is actually needed.
+     */
+    @JsonIgnore
+    public void setInfoLoader(Supplier<String> infoLoader) {
+        this.infoLoader = infoLoader;
+    }
+
+    private void loadInfo() {
+        if (infoLoader != null) {
+            String loadedInfo = infoLoader.get();
+            infoLoader = null;
+            setLoadedInfo(loadedInfo == null ? StringUtils.EMPTY : loadedInfo);
+        }
+    }
+
+    private void setLoadedInfo(String info) {
+        if (infoProperty == null) {
+            this.info = info;
+        } else {
+            infoProperty.set(info);
+        }
     }
 
     public String getPasswordFlag() {
-        return passwordFlag.get();
+        return passwordFlagProperty == null ? passwordFlag : passwordFlagProperty.get();
     }
 
     public void setPasswordFlag(String passwordFlag) {
-        this.passwordFlag.set(passwordFlag);
+        setPasswordFlagValue(passwordFlag);
         if ("Y".equalsIgnoreCase(passwordFlag)) {
             this.isPassword = true;
         } else {
             this.isPassword = false;
         }
-        this.lastModifiedTime.set(LocalDateTime.now());
+        this.setLastModifiedMillis(System.currentTimeMillis());
+    }
+
+    private void setPasswordFlagValue(String passwordFlag) {
+        if (passwordFlagProperty == null) {
+            this.passwordFlag = passwordFlag;
+        } else {
+            passwordFlagProperty.set(passwordFlag);
+        }
     }
 
     public StringProperty passwordFlagProperty() {
-        return passwordFlag;
+        if (passwordFlagProperty == null) {
+            passwordFlagProperty = new SimpleStringProperty(passwordFlag);
+            passwordFlag = null;
+        }
+        return passwordFlagProperty;
     }
 
     public LocalDateTime getLastModifiedTime() {
-        return lastModifiedTime.get();
+        return toLocalDateTime(lastModifiedMillis);
     }
 
-    public ObjectProperty<LocalDateTime> lastModifiedTimeProperty() {
-        return lastModifiedTime;
+    public ReadOnlyObjectProperty<LocalDateTime> lastModifiedTimeProperty() {
+        if (lastModifiedTimeProperty == null) {
+            lastModifiedTimeProperty = new ReadOnlyObjectWrapper<LocalDateTime>(getLastModifiedTime());
+        }
+        return lastModifiedTimeProperty.getReadOnlyProperty();
     }
 
     public void setLastModifiedTime(LocalDateTime lastModifiedTime) {
-        this.lastModifiedTime.set(lastModifiedTime);
+        setLastModifiedMillis(toEpochMillis(lastModifiedTime));
+    }
+
+    @JsonIgnore
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    @JsonIgnore
+    public void setLastModifiedMillis(long lastModifiedMillis) {
+        this.lastModifiedMillis = lastModifiedMillis;
+        if (lastModifiedTimeProperty != null) {
+            lastModifiedTimeProperty.set(getLastModifiedTime());
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime localDateTime) {
+        return localDateTime == null ? NO_TIME : localDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return epochMillis == NO_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 
     public String getNotebook() {
@@ -195,9 +399,9 @@ public class NoteEntry implements Comparable<NoteEntry> {
 
     public void setPassword(boolean isPassword) {
         if (isPassword) {
-            this.passwordFlag.set("Y");
+            setPasswordFlagValue("Y");
         } else {
-            this.passwordFlag.set("N");
+            setPasswordFlagValue("N");
         }
         this.isPassword = isPassword;
     }
@@ -206,7 +410,7 @@ public class NoteEntry implements Comparable<NoteEntry> {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((id == null) ? 0 : id.hashCode());
+        result = prime * result + (uuidId ? Long.hashCode(idHigh ^ idLow) : ((idText == null) ? 0 : idText.hashCode()));
         return result;
     }
 
@@ -219,17 +423,17 @@ public class NoteEntry implements Comparable<NoteEntry> {
         if (getClass() != obj.getClass())
             return false;
         NoteEntry other = (NoteEntry) obj;
-        if (id == null) {
-            if (other.id != null)
-                return false;
-        } else if (!id.equals(other.id))
+        if (uuidId != other.uuidId)
             return false;
-        return true;
+        if (uuidId)
+            return idHigh == other.idHigh && idLow == other.idLow;
+        return Objects.equals(idText, other.idText);
     }
 
     @Override
     public String toString() {
-        return String.format("ID: [%s] Key: [%s] Value: [%s] Info[%s] PasswordFlag[%s]", id, key, value, info, passwordFlag);
+        return String.format("ID: [%s] Key: [%s] Value: [%s] Info[%s] PasswordFlag[%s]", getId(), getKey(), getValue(),
+                infoLoader == null ? getInfo() : "<not read>", getPasswordFlag());
     }
 
     @Override
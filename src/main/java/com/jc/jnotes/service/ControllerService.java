@@ -1,19 +1,48 @@
 package com.jc.jnotes.service;
 
 import static com.jc.jnotes.AppConfig.APP_CONFIG;
-
+import static com.jc.jnotes.JNotesConstants.MAX_SEARCH_RESULTS;
+import static com.jc.jnotes.JNotesConstants.NOTES_PAGE_SIZE;
+import static com.jc.jnotes.JNotesConstants.SEARCH_CACHE_SIZE;
+import static com.jc.jnotes.JNotesConstants.SYNC_OVERLAP_MILLIS;
+import static com.jc.jnotes.JNotesConstants.SYNC_PARALLELISM;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.jc.jnotes.UserPreferences;
 import com.jc.jnotes.dao.local.LocalNoteEntryDao;
+import com.jc.jnotes.dao.local.NoteEntryChangeEvent;
+import com.jc.jnotes.dao.local.NoteEntryPage;
+import com.jc.jnotes.dao.local.ScoredNoteEntry;
+import com.jc.jnotes.dao.local.SearchResultCache;
 import com.jc.jnotes.dao.remote.RemoteNoteEntryDao;
+import com.jc.jnotes.dao.remote.TransferStats;
 import com.jc.jnotes.helper.IOHelper;
 import com.jc.jnotes.model.NoteEntry;
 
@@ -26,6 +55,8 @@ import com.jc.jnotes.model.NoteEntry;
  */
 public class ControllerService {
 
+    private static final Logger LOGGER = Logger.getLogger(ControllerService.class.getName());
+
     private final UserPreferences userPreferences;
 
     private final BiConsumer<String, String> localDaoInvalidator;
@@ -33,6 +64,29 @@ public class ControllerService {
 
     private final IOHelper ioHelper;
 
+    // Runs per notebook work (e.g. searching all notebooks) in parallel
+    private final ExecutorService notebookExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            (runnable) -> {
+                Thread thread = new Thread(runnable, "jnotes-notebook-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Backs up and restores notebooks concurrently, as each of them mostly waits on the remote store. The pool bounds how
+    // many notebooks talk to the remote store at once, its threads are virtual where the runtime has them.
+    private final ExecutorService syncExecutor = Executors.newFixedThreadPool(SYNC_PARALLELISM, newSyncThreadFactory());
+
+    private final SearchResultCache<List<ScoredNoteEntry>> searchResultCache = new SearchResultCache<>(SEARCH_CACHE_SIZE);
+
+    // Told about the writes to every notebook
+    private final List<Consumer<NoteEntryChangeEvent>> changeListeners = new CopyOnWriteArrayList<>();
+
+    // Told about the remote writes which failed
+    private final List<Consumer<String>> remoteFailureListeners = new CopyOnWriteArrayList<>();
+
+    // Last remote write of each notebook, so that the next one is only sent once it is done
+    private final Map<String, CompletableFuture<Void>> lastRemoteWrites = new HashMap<>();
+
     public ControllerService(UserPreferences userPreferences, BiConsumer<String, String> localDaoInvalidator,
             BiConsumer<String, String> remoteDaoInvalidator, IOHelper ioHelper) {
         this.userPreferences = userPreferences;
@@ -49,6 +103,43 @@ public class ControllerService {
         return APP_CONFIG.getRemoteNoteEntryDao(userId, userSecret);
     }
 
+    public SearchResultCache<List<ScoredNoteEntry>> getSearchResultCache() {
+        return searchResultCache;
+    }
+
+    /**
+     * listener is told about every successful write to any notebook, on the writing thread. Notebook level operations
+     * (delete, rename, restore) are not reported entry by entry.
+     */
+    public void addChangeListener(Consumer<NoteEntryChangeEvent> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Consumer<NoteEntryChangeEvent> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * listener is told the message of every remote write which failed, on the thread which saw the failure. Local
+     * writes are done by then, the failed remote ones are sent again by the next backup.
+     */
+    public void addRemoteFailureListener(Consumer<String> listener) {
+        remoteFailureListeners.add(listener);
+    }
+
+    public void removeRemoteFailureListener(Consumer<String> listener) {
+        remoteFailureListeners.remove(listener);
+    }
+
+    /**
+     * Registered with every local Dao when it is created.
+     */
+    public void onChange(NoteEntryChangeEvent changeEvent) {
+        for (Consumer<NoteEntryChangeEvent> listener : changeListeners) {
+            listener.accept(changeEvent);
+        }
+    }
+
     public void invalidateLocalDao(String notebook) {
         localDaoInvalidator.accept(userPreferences.getBasePath(), notebook);
     }
@@ -61,7 +152,10 @@ public class ControllerService {
         try {
             this.getLocalNoteEntryDao(userPreferences.getCurrentNotebook()).addNoteEntry(noteEntry);
             if (userPreferences.isConnected()) {
-                this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret()).addNoteEntry(noteEntry);
+                RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
+                NoteEntry sentNoteEntry = copyOf(noteEntry, noteEntry.getNotebook());
+                writeRemotely(List.of(userPreferences.getCurrentNotebook()), () -> remoteDao.addNoteEntryAsync(sentNoteEntry),
+                        "Failed to add Note remotely");
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -69,11 +163,29 @@ public class ControllerService {
         }
     }
 
+    public void addNoteEntries(List<NoteEntry> noteEntries) throws ControllerServiceException {
+        try {
+            this.getLocalNoteEntryDao(userPreferences.getCurrentNotebook()).addNoteEntries(noteEntries);
+            if (userPreferences.isConnected()) {
+                RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
+                List<NoteEntry> sentNoteEntries = copiesOf(noteEntries);
+                writeRemotely(List.of(userPreferences.getCurrentNotebook()), () -> remoteDao.backupAsync(sentNoteEntries),
+                        "Failed to add Notes remotely");
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new ControllerServiceException("Exception while creating new Notes", ex);
+        }
+    }
+
     public void editNoteEntry(NoteEntry noteEntry) throws ControllerServiceException {
         try {
-            this.getLocalNoteEntryDao(userPreferences.getCurrentNotebook()).editNoteEntry(noteEntry);
+            this.getLocalNoteEntryDao(notebookOf(noteEntry)).editNoteEntry(noteEntry);
             if (userPreferences.isConnected()) {
-                this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret()).editNoteEntry(noteEntry);
+                RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
+                NoteEntry sentNoteEntry = copyOf(noteEntry, noteEntry.getNotebook());
+                writeRemotely(List.of(notebookOf(noteEntry)), () -> remoteDao.editNoteEntryAsync(sentNoteEntry),
+                        "Failed to update Note remotely");
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -84,7 +196,43 @@ public class ControllerService {
     public List<NoteEntry> searchNotes(String searchTxt, boolean searchInfoAlso) {
         List<NoteEntry> notes;
         try {
-            notes = this.getLocalNoteEntryDao(userPreferences.getCurrentNotebook()).searchNotes(searchTxt, searchInfoAlso);
+            notes = searchScoredNotes(userPreferences.getCurrentNotebook(), searchTxt, searchInfoAlso).stream()
+                    .map(ScoredNoteEntry::getNoteEntry).collect(Collectors.toList());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            notes = Collections.emptyList();
+        }
+        return notes;
+    }
+
+    /**
+     * Served from searchResultCache while the notebook has not been written to since the same search was last run.
+     */
+    private List<ScoredNoteEntry> searchScoredNotes(String notebook, String searchTxt, boolean searchInfoAlso) {
+        LocalNoteEntryDao localDao = this.getLocalNoteEntryDao(notebook);
+        String searchParam = searchTxt.toLowerCase();
+        List<Object> cacheKey = List.of(notebook, searchParam, searchInfoAlso, MAX_SEARCH_RESULTS);
+        return searchResultCache.get(cacheKey, localDao.getGeneration(),
+                () -> localDao.searchScoredNotes(searchParam, searchInfoAlso, MAX_SEARCH_RESULTS));
+    }
+
+    /**
+     * Searches every notebook in parallel and merges the hits by score. Each hit carries its notebook.
+     */
+    public List<NoteEntry> searchAllNotebooks(String searchTxt, boolean searchInfoAlso) {
+        List<NoteEntry> notes;
+        try {
+            List<Future<List<ScoredNoteEntry>>> futures = new ArrayList<>();
+            for (String notebook : ioHelper.getAllNotebooks()) {
+                futures.add(notebookExecutor.submit(() -> searchScoredNotes(notebook, searchTxt, searchInfoAlso)));
+            }
+            List<ScoredNoteEntry> scoredNotes = new ArrayList<>();
+            for (Future<List<ScoredNoteEntry>> future : futures) {
+                scoredNotes.addAll(future.get());
+            }
+            // Stable sort, so equally scored hits stay grouped by notebook in their notebook's order
+            notes = scoredNotes.stream().sorted(Comparator.comparing(ScoredNoteEntry::getScore).reversed()).limit(MAX_SEARCH_RESULTS)
+                    .map(ScoredNoteEntry::getNoteEntry).collect(Collectors.toList());
         } catch (Exception ex) {
             ex.printStackTrace();
             notes = Collections.emptyList();
@@ -92,23 +240,56 @@ public class ControllerService {
         return notes;
     }
 
-    public List<NoteEntry> getAll() {
-        List<NoteEntry> allNoteEntries;
+    public int getNoteEntryCount(String notebook) {
+        try {
+            return this.getLocalNoteEntryDao(notebook).getCount();
+        } catch (Exception ex) {
+            System.err.println("Exception in getNoteEntryCount. " + ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 
+     * @param previousPage
+     *            - null for the first page
+     * @param oldestFirst
+     *            - false: latest modified first
+     */
+    public NoteEntryPage getNoteEntryPage(String notebook, NoteEntryPage previousPage, int pageSize, boolean oldestFirst) {
+        try {
+            return this.getLocalNoteEntryDao(notebook).getPage(previousPage, 0, pageSize, oldestFirst);
+        } catch (Exception ex) {
+            System.err.println("Exception in getNoteEntryPage. " + ex.getMessage());
+            return new NoteEntryPage(Collections.emptyList(), null);
+        }
+    }
+
+    /**
+     * 
+     * @param previousPage
+     *            - null to count offset from the first note
+     */
+    public NoteEntryPage getNoteEntryPage(String notebook, NoteEntryPage previousPage, int offset, int pageSize, boolean oldestFirst) {
         try {
-            allNoteEntries = this.getLocalNoteEntryDao(userPreferences.getCurrentNotebook()).getAll(userPreferences.getCurrentNotebook());
+            return this.getLocalNoteEntryDao(notebook).getPage(previousPage, offset, pageSize, oldestFirst);
         } catch (Exception ex) {
-            allNoteEntries = Collections.emptyList();
-            System.err.println("Exception in loadAllNoteEntries. " + ex.getMessage());
+            System.err.println("Exception in getNoteEntryPage. " + ex.getMessage());
+            return new NoteEntryPage(Collections.emptyList(), null);
         }
-        return allNoteEntries;
     }
 
     public void deleteNoteEntries(List<NoteEntry> noteEntriesToBeDeleted) throws ControllerServiceException {
         try {
-            this.getLocalNoteEntryDao(userPreferences.getCurrentNotebook()).deleteNoteEntries(noteEntriesToBeDeleted);
+            // Entries listed by searchAllNotebooks can be from different notebooks
+            Map<String, List<NoteEntry>> noteEntriesByNotebook = noteEntriesToBeDeleted.stream()
+                    .collect(Collectors.groupingBy(this::notebookOf));
+            noteEntriesByNotebook.forEach((notebook, noteEntries) -> this.getLocalNoteEntryDao(notebook).deleteNoteEntries(noteEntries));
             if (userPreferences.isConnected()) {
-                this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret())
-                        .deleteNoteEntries(noteEntriesToBeDeleted);
+                RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
+                List<NoteEntry> sentNoteEntries = copiesOf(noteEntriesToBeDeleted);
+                writeRemotely(noteEntriesByNotebook.keySet(), () -> remoteDao.deleteNoteEntriesAsync(sentNoteEntries),
+                        "Failed to delete Notes remotely");
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -116,6 +297,60 @@ public class ControllerService {
         }
     }
 
+    /**
+     * Remote writes are sent after the call returns, while the given NoteEntry (bound to the UI) may be edited again, so
+     * they send a copy of it as it is now. The copy is not shared, so it is never changed.
+     */
+    private static NoteEntry copyOf(NoteEntry noteEntry, String notebook) {
+        return new NoteEntry(notebook, noteEntry.getId(), noteEntry.getKey(), noteEntry.getValue(), noteEntry.getInfo(),
+                noteEntry.getPasswordFlag(), noteEntry.getLastModifiedMillis());
+    }
+
+    private static List<NoteEntry> copiesOf(List<NoteEntry> noteEntries) {
+        return noteEntries.stream().map((noteEntry) -> copyOf(noteEntry, noteEntry.getNotebook())).collect(Collectors.toList());
+    }
+
+    /**
+     * Remote writes of single edits are not waited for, but each one is only sent once the previous ones to the same
+     * notebooks are done, so that they reach the remote store in the order of the local writes. One which fails is
+     * reported to the remoteFailureListeners and is sent again by the next backup, as the local write it follows is
+     * newer than the last sync (or left a tombstone).
+     * 
+     * @param notebooks
+     *            - notebooks the write is to
+     */
+    private void writeRemotely(Collection<String> notebooks, Supplier<CompletableFuture<Void>> remoteWrite, String failureMessage) {
+        CompletableFuture<Void> previousWrites;
+        CompletableFuture<Void> write = new CompletableFuture<>();
+        synchronized (lastRemoteWrites) {
+            previousWrites = CompletableFuture.allOf(notebooks.stream().map(lastRemoteWrites::get).filter(Objects::nonNull)
+                    .toArray(CompletableFuture[]::new));
+            notebooks.forEach((notebook) -> lastRemoteWrites.put(notebook, write));
+        }
+        // Started outside the lock, as a Dao without a non-blocking transport writes on the calling thread. A failed
+        // write does not hold back the ones after it, they do not depend on it.
+        previousWrites.handle((result, ex) -> null).thenCompose((result) -> remoteWrite.get()).whenComplete((result, ex) -> {
+            synchronized (lastRemoteWrites) {
+                notebooks.forEach((notebook) -> lastRemoteWrites.remove(notebook, write));
+            }
+            if (ex != null) {
+                String message = failureMessage + ", it is sent again with the next backup";
+                System.out.println(message);
+                ex.printStackTrace();
+                for (Consumer<String> listener : remoteFailureListeners) {
+                    listener.accept(message);
+                }
+                write.completeExceptionally(ex);
+            } else {
+                write.complete(null);
+            }
+        });
+    }
+
+    private String notebookOf(NoteEntry noteEntry) {
+        return StringUtils.isBlank(noteEntry.getNotebook()) ? userPreferences.getCurrentNotebook() : noteEntry.getNotebook();
+    }
+
     // Do not use UserPreference inside this method as it will be updated after the connection is made/verified.
     public String connect(boolean isNewUser, String userId, String userSecret) throws ControllerServiceException {
         System.out.println("Connecting to Cloud Datastore..");
@@ -156,76 +391,240 @@ public class ControllerService {
     }
 
     /**
-     * 1. fetches all local notebook<br>
-     * 2. associates progress weight to each notebook<br>
-     * 3. calls remote DAO to backup notebook and notifies caller of the progress<br>
+     * Delta sync of all local notebooks:<br>
+     * 1. sends the tombstones of every notebook, before any writes, as a note moved between notebooks is deleted from one
+     * and written to the other<br>
+     * 2. sends each notebook's entries written since its last sync, notebooks concurrently, and notifies caller of the
+     * progress as notebooks are done<br>
+     * 3. records the sync in the notebook, only once everything it sent has been accepted<br>
+     * A notebook which has never been synced is replaced as a whole in the remote store: all its notes are upserted, and
+     * only then are the remote notes it does not have deleted, so the remote notebook is never left empty meanwhile.<br>
+     * A notebook which fails does not stop the others, it is backed up again by the next backup.
      * 
      * @param progressConsumer
      *            - callback
      * @throws ControllerServiceException
+     *             - naming the notebooks which failed, if any
      */
     public void backup(Consumer<Long> progressConsumer) throws ControllerServiceException {
+        Map<String, Exception> failures;
         try {
             List<String> notebooks = ioHelper.getAllNotebooks();
-            long weightageOfEachNotebook = 100L / notebooks.size();
-            long progress = 0;
-            for (String notebook : notebooks) {
-                RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
-                List<NoteEntry> notes = this.getLocalNoteEntryDao(notebook).getAll(notebook);
-                remoteDao.deleteNotebook(notebook);
-                remoteDao.backup(notes);
-                progress += weightageOfEachNotebook;
-                progressConsumer.accept(progress);
-            }
+            RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
+            TransferStats transferStatsBefore = remoteDao.getTransferStats();
+            Map<String, List<String>> deletedIdsByNotebook = new ConcurrentHashMap<>();
+            failures = forEachNotebookConcurrently(notebooks, (notebook) -> {
+                List<String> deletedIds = this.getLocalNoteEntryDao(notebook).getDeletedIds();
+                if (!deletedIds.isEmpty()) {
+                    remoteDao.deleteNoteEntries(toTombstones(notebook, deletedIds));
+                }
+                deletedIdsByNotebook.put(notebook, deletedIds);
+            }, null);
+            failures.putAll(forEachNotebookConcurrently(deletedIdsByNotebook.keySet(), (notebook) -> {
+                LocalNoteEntryDao localDao = this.getLocalNoteEntryDao(notebook);
+                long syncStartMillis = System.currentTimeMillis();
+                long lastSyncedMillis = localDao.getLastSyncedMillis();
+                if (lastSyncedMillis == 0) {
+                    Set<String> localIds = new HashSet<>();
+                    localDao.forEachPage(notebook, NOTES_PAGE_SIZE, (noteEntries) -> {
+                        remoteDao.backup(noteEntries);
+                        noteEntries.forEach((noteEntry) -> localIds.add(noteEntry.getId()));
+                    });
+                    // Checked here rather than trusting the remote store to filter, a note of another notebook must not
+                    // be deleted
+                    List<String> remoteOnlyIds = remoteDao.getAll(notebook).stream()
+                            .filter((noteEntry) -> notebook.equals(noteEntry.getNotebook())).map(NoteEntry::getId)
+                            .filter((id) -> !localIds.contains(id)).collect(Collectors.toList());
+                    if (!remoteOnlyIds.isEmpty()) {
+                        remoteDao.deleteNoteEntries(toTombstones(notebook, remoteOnlyIds));
+                    }
+                } else {
+                    localDao.forEachWrittenSince(lastSyncedMillis - SYNC_OVERLAP_MILLIS, NOTES_PAGE_SIZE, remoteDao::backup);
+                }
+                localDao.markSynced(syncStartMillis, deletedIdsByNotebook.get(notebook));
+            }, progressConsumer));
+            LOGGER.info("Backup transferred - " + remoteDao.getTransferStats().minus(transferStatsBefore));
         } catch (Exception ex) {
             throw new ControllerServiceException("Failed to backup", ex);
         }
+        if (!failures.isEmpty()) {
+            throw notebooksFailed("Failed to backup notebooks: ", failures);
+        }
     }
 
     /**
-     * As this overwrites all local noteEntries with the cloud noteEntries, we export the local notebooks first. 1. fetches
-     * all remote notes<br>
-     * 2. associates progress weight to each notebook<br>
-     * 3. gets all local noteEntries for each notebook<br>
-     * 4. Upserts all noteEntries for each notebook into local store<br>
+     * 
+     * @return entries carrying only notebook and id, which is all the remote store needs to delete them
+     */
+    private static List<NoteEntry> toTombstones(String notebook, List<String> ids) {
+        return ids.stream().map((id) -> new NoteEntry(notebook, id, null, null, null, null)).collect(Collectors.toList());
+    }
+
+    /**
+     * Overwrites the local noteEntries with the cloud noteEntries of the same id, local noteEntries not in the cloud are
+     * kept. Nothing is exported first.<br>
+     * 1. streams all remote notes, in batches of one notebook<br>
+     * 2. upserts each batch into its local notebook as soon as it is read, SYNC_PARALLELISM batches at a time<br>
+     * 3. notifies caller of the progress as the remote notes are read<br>
+     * 4. records the sync of the notebooks which were empty and never synced, as they now match the remote store<br>
+     * Restored notes are not sent back by the next delta backup. At most SYNC_PARALLELISM + one batch per notebook is held in memory. A notebook which fails does not stop the
+     * others, its remaining batches are skipped.
      * 
      * @param progressConsumer
      *            - callback
      * @throws ControllerServiceException
+     *             - naming the notebooks which failed, if any
      */
     public void restore(Consumer<Long> progressConsumer) throws ControllerServiceException {
+        Semaphore batchesInProgress = new Semaphore(SYNC_PARALLELISM);
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
+        Exception readFailure = null;
+        Set<String> restoredNotebooks = new HashSet<>(); // only used by the reading thread
+        Set<String> emptyNotebooks = ConcurrentHashMap.newKeySet();
+        RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
+        TransferStats transferStatsBefore = remoteDao.getTransferStats();
+        long restoreStartMillis = System.currentTimeMillis();
         try {
-            Map<String, List<NoteEntry>> notebookMap = this
-                    .getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret()).restore();
-            long weightageOfEachNotebook = 100L / notebookMap.size();
-
-            Set<String> notebookNames = notebookMap.keySet();
-            long progress = 0;
-            for (String notebook : notebookNames) {
-                List<NoteEntry> remoteNotes = notebookMap.get(notebook);
-                LocalNoteEntryDao localDao = this.getLocalNoteEntryDao(notebook);
-                List<NoteEntry> localNotes = localDao.getAll(notebook);
-                HashSet<String> lookupSetOfLocalNoteEntries = localNotes.stream().map((noteEntry) -> noteEntry.getId())
-                        .collect(Collectors.toCollection(HashSet::new));
-                for (NoteEntry remoteNote : remoteNotes) {
-                    if (lookupSetOfLocalNoteEntries.contains(remoteNote.getId())) {
-                        localDao.editNoteEntry(remoteNote);
-                    } else {
-                        localDao.addNoteEntry(remoteNote);
+            remoteDao.restore(NOTES_PAGE_SIZE,
+                    (notebook, noteEntries) -> {
+                        if (failures.containsKey(notebook)) {
+                            return;
+                        }
+                        if (restoredNotebooks.add(notebook)) {
+                            try {
+                                LocalNoteEntryDao localDao = this.getLocalNoteEntryDao(notebook);
+                                if (localDao.getLastSyncedMillis() == 0 && localDao.getCount() == 0) {
+                                    emptyNotebooks.add(notebook);
+                                }
+                            } catch (Exception ex) {
+                                ex.printStackTrace();
+                                failures.putIfAbsent(notebook, ex);
+                                return;
+                            }
+                        }
+                        // Reading waits here until a batch is done, so that read batches do not pile up
+                        batchesInProgress.acquireUninterruptibly();
+                        syncExecutor.execute(() -> {
+                            try {
+                                this.getLocalNoteEntryDao(notebook).restoreNoteEntries(noteEntries);
+                            } catch (Exception ex) {
+                                ex.printStackTrace();
+                                failures.putIfAbsent(notebook, ex);
+                            } finally {
+                                batchesInProgress.release();
+                            }
+                        });
+                    }, progressConsumer);
+        } catch (Exception ex) {
+            readFailure = ex;
+        }
+        batchesInProgress.acquireUninterruptibly(SYNC_PARALLELISM); // waits for the batches being written
+        batchesInProgress.release(SYNC_PARALLELISM);
+        if (readFailure != null) {
+            ControllerServiceException exception = new ControllerServiceException("Failed to restore", readFailure);
+            failures.values().forEach(exception::addSuppressed);
+            throw exception;
+        }
+        for (String notebook : emptyNotebooks) {
+            if (!failures.containsKey(notebook)) {
+                try {
+                    // Notes written during the restore are later than restoreStartMillis, so they are still backed up
+                    this.getLocalNoteEntryDao(notebook).markSynced(restoreStartMillis, Collections.emptyList());
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    failures.put(notebook, ex);
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw notebooksFailed("Failed to restore notebooks: ", failures);
+        }
+        LOGGER.info("Restore transferred - " + remoteDao.getTransferStats().minus(transferStatsBefore));
+    }
+
+    /**
+     * Runs notebookTask for each notebook on the sync executor, at most SYNC_PARALLELISM at a time, and waits for all of
+     * them. A notebook which fails does not stop the others.
+     * 
+     * @param progressConsumer
+     *            - when not null, told the percentage of notebooks done (failed or not) after each one, in increasing
+     *            order
+     * @return the exception of each notebook which failed
+     */
+    private Map<String, Exception> forEachNotebookConcurrently(Collection<String> notebooks, Consumer<String> notebookTask,
+            Consumer<Long> progressConsumer) throws InterruptedException, ExecutionException {
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
+        AtomicInteger notebooksDone = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (String notebook : notebooks) {
+            futures.add(syncExecutor.submit(() -> {
+                try {
+                    notebookTask.accept(notebook);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    failures.put(notebook, ex);
+                }
+                if (progressConsumer != null) {
+                    synchronized (notebooksDone) {
+                        progressConsumer.accept(notebooksDone.incrementAndGet() * 100L / notebooks.size());
                     }
                 }
-                progress += weightageOfEachNotebook;
-                progressConsumer.accept(progress);
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
             }
-        } catch (Exception ex) {
-            throw new ControllerServiceException("Failed to restore", ex);
+        } finally {
+            // Running tasks are not interrupted, an interrupted Lucene write closes the index
+            futures.forEach((future) -> future.cancel(false));
+        }
+        return failures;
+    }
+
+    private static ControllerServiceException notebooksFailed(String message, Map<String, Exception> failures) {
+        List<String> failedNotebooks = new ArrayList<>(failures.keySet());
+        Collections.sort(failedNotebooks);
+        ControllerServiceException exception = new ControllerServiceException(message + String.join(", ", failedNotebooks),
+                failures.get(failedNotebooks.get(0)));
+        failedNotebooks.stream().skip(1).map(failures::get).forEach(exception::addSuppressed);
+        return exception;
+    }
+
+    /**
+     * Virtual threads through reflection, as the build targets Java 17. Falls back to daemon platform threads on
+     * runtimes without them (or with them only as a preview feature).
+     */
+    private static ThreadFactory newSyncThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "jnotes-sync-worker-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            return (runnable) -> {
+                Thread thread = new Thread(runnable, "jnotes-sync-worker");
+                thread.setDaemon(true);
+                return thread;
+            };
         }
     }
 
+    /**
+     * Exports all notes of the current notebook, reading them a page at a time.
+     * 
+     * @return String value of the Path of the exported file. null if export failed.
+     */
+    public String exportNotebook() {
+        String notebook = userPreferences.getCurrentNotebook();
+        return ioHelper.exportNotebook(this.getLocalNoteEntryDao(notebook), notebook);
+    }
+
     public void deleteNotebook(String notebookToBeDeleted) throws ControllerServiceException {
         try {
-            ioHelper.deleteNotebook(notebookToBeDeleted);
+            // Release the notebook's index before its directory is removed
             this.invalidateLocalDao(notebookToBeDeleted);
+            ioHelper.deleteNotebook(notebookToBeDeleted);
             if (userPreferences.isConnected()) {
                 this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret())
                         .deleteNotebook(notebookToBeDeleted);
@@ -238,11 +637,20 @@ public class ControllerService {
 
     public void renameNotebook(String notebookToBeRenamed, String newNotebookName) throws ControllerServiceException {
         try {
-            ioHelper.moveNotebook(notebookToBeRenamed, newNotebookName);
+            // Release the notebook's index before its directory is moved
             this.invalidateLocalDao(notebookToBeRenamed);
+            ioHelper.moveNotebook(notebookToBeRenamed, newNotebookName);
             if (userPreferences.isConnected()) {
-                this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret()).renameNotebook(notebookToBeRenamed,
-                        newNotebookName);
+                try {
+                    this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret())
+                            .renameNotebook(notebookToBeRenamed, newNotebookName);
+                } catch (Exception ex) {
+                    this.getLocalNoteEntryDao(newNotebookName).resetSyncState();
+                    throw ex;
+                }
+            } else {
+                // There is no remote notebook of the new name to send deltas to, the next backup writes it as a whole
+                this.getLocalNoteEntryDao(newNotebookName).resetSyncState();
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -264,19 +672,17 @@ public class ControllerService {
             throws ControllerServiceException {
         try {
             LocalNoteEntryDao localDestinationDao = this.getLocalNoteEntryDao(destinationNotebook);
-            for (NoteEntry noteEntry : noteEntriesToBeMoved) {
-                localDestinationDao.addNoteEntry(noteEntry);
-            }
+            localDestinationDao.addNoteEntries(noteEntriesToBeMoved);
             LocalNoteEntryDao localSourceDao = this.getLocalNoteEntryDao(selectedNotebook);
             localSourceDao.deleteNoteEntries(noteEntriesToBeMoved);
             if (userPreferences.isConnected()) {
+                // Only the moved notes change remotely: gone from the source notebook, present in the destination one
                 RemoteNoteEntryDao remoteDao = this.getRemoteNoteEntryDao(userPreferences.getUserId(), userPreferences.getUserSecret());
-
-                List<NoteEntry> destinationNotes = this.getLocalNoteEntryDao(destinationNotebook).getAll(destinationNotebook);
-                remoteDao.backup(destinationNotes);
-
-                List<NoteEntry> sourceNotes = this.getLocalNoteEntryDao(selectedNotebook).getAll(selectedNotebook);
-                remoteDao.backup(sourceNotes);
+                List<NoteEntry> deletedNoteEntries = copiesOf(noteEntriesToBeMoved);
+                List<NoteEntry> movedNoteEntries = noteEntriesToBeMoved.stream().map((noteEntry) -> copyOf(noteEntry, destinationNotebook))
+                        .collect(Collectors.toList());
+                writeRemotely(List.of(selectedNotebook, destinationNotebook), () -> remoteDao.deleteNoteEntriesAsync(deletedNoteEntries)
+                        .thenCompose((result) -> remoteDao.backupAsync(movedNoteEntries)), "Failed to move Notes remotely");
             }
         } catch (Exception ex) {
             ex.printStackTrace();
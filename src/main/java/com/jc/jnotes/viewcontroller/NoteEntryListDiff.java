@@ -0,0 +1,107 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.viewcontroller;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.jc.jnotes.model.NoteEntry;
+
+import javafx.collections.ObservableList;
+
+/**
+ * 
+ * Brings a shown list of notes to a new content with as few list changes as possible, so that the table keeps its
+ * selection and scroll position and only re-renders the rows which changed.
+ * 
+ * @author Joy C
+ *
+ */
+final class NoteEntryListDiff {
+
+    // Beyond this many single inserts/moves/replaces the content is set in one change instead
+    static final int MAX_SINGLE_CHANGES = 100;
+
+    private NoteEntryListDiff() {
+    }
+
+    /**
+     * Notes are matched by id. A matched note stays the same object unless its lastModifiedTime differs, then it is
+     * replaced by the updated one.
+     */
+    static void apply(ObservableList<NoteEntry> current, List<NoteEntry> updated) {
+        Set<NoteEntry> currentSet = new HashSet<>(current);
+        if (updated.stream().filter((noteEntry) -> !currentSet.contains(noteEntry)).count() > MAX_SINGLE_CHANGES) {
+            current.setAll(updated);
+            return;
+        }
+
+        Set<NoteEntry> updatedSet = new HashSet<>(updated);
+        List<NoteEntry> removed = new ArrayList<>();
+        for (NoteEntry noteEntry : current) {
+            if (!updatedSet.contains(noteEntry)) {
+                removed.add(noteEntry);
+            }
+        }
+        if (!removed.isEmpty()) {
+            current.removeAll(new HashSet<>(removed)); // one change
+        }
+
+        int changes = 0;
+        for (int i = 0; i < updated.size(); i++) {
+            NoteEntry updatedEntry = updated.get(i);
+            int currentIndex = indexOf(current, updatedEntry, i);
+            if (currentIndex == i && isUnchanged(current.get(i), updatedEntry)) {
+                continue;
+            }
+            if (++changes > MAX_SINGLE_CHANGES) {
+                current.setAll(updated);
+                return;
+            }
+            if (currentIndex == i) {
+                current.set(i, updatedEntry);
+            } else if (currentIndex > i) {
+                NoteEntry moved = current.remove(currentIndex);
+                current.add(i, isUnchanged(moved, updatedEntry) ? moved : updatedEntry);
+            } else {
+                current.add(i, updatedEntry);
+            }
+        }
+        if (current.size() > updated.size()) { // only with duplicates in current
+            current.remove(updated.size(), current.size());
+        }
+    }
+
+    private static int indexOf(List<NoteEntry> noteEntries, NoteEntry noteEntry, int fromIndex) {
+        // Mostly the note is still at the same index, scanning happens at most MAX_SINGLE_CHANGES times
+        for (int i = fromIndex; i < noteEntries.size(); i++) {
+            if (noteEntries.get(i).equals(noteEntry)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isUnchanged(NoteEntry current, NoteEntry updated) {
+        return current == updated || current.getLastModifiedMillis() == updated.getLastModifiedMillis();
+    }
+
+}
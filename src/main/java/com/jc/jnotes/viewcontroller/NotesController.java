@@ -21,6 +21,7 @@ package com.jc.jnotes.viewcontroller;
 import com.jc.jnotes.JNotesApplication;
 import com.jc.jnotes.UserPreferences;
 import com.jc.jnotes.helper.AlertHelper;
+import com.jc.jnotes.dao.local.NoteEntryChangeEvent;
 import com.jc.jnotes.helper.IOHelper;
 import com.jc.jnotes.model.NoteEntry;
 import com.jc.jnotes.service.ControllerService;
@@ -49,9 +50,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -83,6 +89,10 @@ public class NotesController {
 
     private static final String IMPORTING_STATUS_NOTIFICATION = "Importing...";
 
+    private static final String LOADING_STATUS_NOTIFICATION = "Loading...";
+    private static final String LOAD_FAILURE_STATUS_NOTIFICATION = "Failed to load Notes.";
+    private static final String SEARCH_FAILURE_STATUS_NOTIFICATION = "Search failed.";
+
     // To Be Set By Caller
     private Stage parentStage;
 
@@ -94,7 +104,17 @@ public class NotesController {
     private NoteEntry selectedNoteEntry = null;
     private boolean showingSearchedResults = false;
 
-    private final Comparator<NoteEntry> comparator = Comparator.comparing((noteEntry) -> noteEntry.getLastModifiedTime());
+    // Notebook loads and searches run here, off the FX thread, one at a time
+    private final ScheduledExecutorService loadExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "jnotes-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> pendingLoad;
+    // Incremented (on the FX thread) whenever the table is asked for new content; results of older requests are dropped
+    private long loadSequence = 0;
+
+    private final Comparator<NoteEntry> comparator = Comparator.comparingLong(NoteEntry::getLastModifiedMillis);
     private NotebookActions notebookActions;
 
     // Spring Dependencies
@@ -110,12 +130,16 @@ public class NotesController {
     @FXML
     private TableColumn<NoteEntry, String> valueColumn;
     @FXML
+    private TableColumn<NoteEntry, String> notebookColumn;
+    @FXML
     private TextArea infoField;
     @FXML
     private TextField searchField;
     @FXML
     private CheckBox searchAllCheckBox;
     @FXML
+    private CheckBox searchAllNotebooksCheckBox;
+    @FXML
     private Text notificationText;
     @FXML
     private ComboBox<String> notebookComboBox;
@@ -181,6 +205,8 @@ public class NotesController {
         alertHelper = APP_CONFIG.getAlertHelper();
         ioHelper = APP_CONFIG.getIOHelper();
         notebookActions = new NotebookActions(service, alertHelper, parentStage, notebookComboBox, notificationText);
+        service.addChangeListener((changeEvent) -> Platform.runLater(() -> applyChange(changeEvent)));
+        service.addRemoteFailureListener((message) -> Platform.runLater(() -> notificationText.setText(message)));
     }
 
     private void initializeNotebooks() {
@@ -226,12 +252,12 @@ public class NotesController {
                     // do nothing
                 } else {
                     event.consume();
-                    loadSearchedNoteEntries(searchTxt);
+                    scheduleSearch(searchTxt);
                     showingSearchedResults = true;
                 }
             } else if (StringUtils.isNotBlank(searchTxt)) {
                 event.consume();
-                loadSearchedNoteEntries(searchTxt);
+                scheduleSearch(searchTxt);
                 showingSearchedResults = true;
             } else {
                 // do nothing
@@ -255,6 +281,15 @@ public class NotesController {
         });
 
         searchAllCheckBox.setTooltip(new Tooltip("Search all fields"));
+
+        searchAllNotebooksCheckBox.setTooltip(new Tooltip("Search all notebooks"));
+        searchAllNotebooksCheckBox.selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+            String searchTxt = searchField.getText();
+            if (StringUtils.isNotBlank(searchTxt)) {
+                scheduleSearch(searchTxt);
+                showingSearchedResults = true;
+            }
+        });
     }
 
     private void initializeInfoField() {
@@ -282,7 +317,6 @@ public class NotesController {
                         alertHelper.showAlertWithExceptionDetails(parentStage, ex, "Failed to save NoteEntry Dialog", "");
                     }
                     notificationText.setText(EDIT_STATUS_NOTIFICATION);
-                    notesTable.refresh();
                 }
             }
         });
@@ -290,6 +324,10 @@ public class NotesController {
 
     private void initializeNotesTableColumns() {
         BiConsumer<String, Integer> saveOnEditBiConsumer = (editedText, colIndex) -> {
+            if (selectedNoteEntry == null) { // e.g. the row of a note deleted meanwhile
+                notesTable.edit(-1, null);
+                return;
+            }
             if (colIndex == 0) {
                 selectedNoteEntry.setKey(editedText);
             } else {// colIndex == 1
@@ -301,10 +339,8 @@ public class NotesController {
             } catch (ControllerServiceException ex) {
                 alertHelper.showAlertWithExceptionDetails(parentStage, ex, "Failed to save NoteEntry Dialog", "");
             }
-            int row = notesTable.getSelectionModel().getSelectedIndex();
-            notesTable.getSelectionModel().clearSelection();
-            notesTable.refresh();
-            notesTable.getSelectionModel().select(row);
+            // The edited cell follows the NoteEntry's property, it only needs to leave editing
+            notesTable.edit(-1, null);
             notificationText.setText(EDIT_STATUS_NOTIFICATION);
         };
 
@@ -313,6 +349,9 @@ public class NotesController {
 
         valueColumn.setCellValueFactory(new PropertyValueFactory<>("displayValue"));
         valueColumn.setCellFactory((tabCol) -> new SaveEnabledTableCell(saveOnEditBiConsumer, 1));
+
+        // Only shown for results of searching all notebooks
+        notebookColumn.setCellValueFactory(new PropertyValueFactory<>("notebook"));
     }
 
     private void initializeNotesTable() {
@@ -321,9 +360,19 @@ public class NotesController {
         notesTable.getSelectionModel().cellSelectionEnabledProperty().set(true);
         notesTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
+        // Sorting by column would read every page of all notes, so only search results can be sorted that way
+        notesTable.setSortPolicy((table) -> {
+            if (table.getItems() instanceof PagedNoteEntryList) {
+                return false;
+            }
+            return TableView.DEFAULT_SORT_POLICY.call(table);
+        });
+
         // When the selected NoteEntry in notesTable we set its info in the infoField
-        notesTable.getSelectionModel().selectedItemProperty().addListener((obs, prevNoteEntry, selectedNoteEntry) -> {
+        notesTable.getSelectionModel().selectedItemProperty().addListener((obs, prevNoteEntry, newSelectedNoteEntry) -> {
             // CRITICAL: most of the code relies on selectedNoteEntry. On losing focus, it also sets selectedNoteEntry to null.
+            // The row of a note deleted meanwhile is not to be edited, it is treated as no selection.
+            NoteEntry selectedNoteEntry = isPlaceholder(newSelectedNoteEntry) ? null : newSelectedNoteEntry;
             this.selectedNoteEntry = selectedNoteEntry;
             // END CRITICAL
             if (selectedNoteEntry != null) { // When the JNotes starts NO NoteEntry is selected. This is to handle that.
@@ -378,8 +427,10 @@ public class NotesController {
                     @SuppressWarnings("unchecked")
                     TablePosition<NoteEntry, ?> tablePosition = tablePositions.get(0);
                     String textToBeCopied;
-                    if (tablePosition.getColumn() == 0) {
+                    if (tablePosition.getTableColumn() == keyColumn) {
                         textToBeCopied = selectedNoteEntry.getKey();
+                    } else if (tablePosition.getTableColumn() == notebookColumn) {
+                        textToBeCopied = selectedNoteEntry.getNotebook();
                     } else {
                         textToBeCopied = selectedNoteEntry.getValue();
                     }
@@ -398,7 +449,8 @@ public class NotesController {
         ContextMenu contextMenu = new ContextMenu();
         // Add move menu to ContextMenu
         // Moving to another notebook is only possible when there is more than one notebook
-        if (notebookComboBox.getItems().size() > 1) {
+        // and when the listed notes are all from the selected notebook
+        if (notebookComboBox.getItems().size() > 1 && !notebookColumn.isVisible()) {
             Menu moveMenu = new Menu("Move to");
             String selectedNotebook = notebookComboBox.getSelectionModel().getSelectedItem();
             for (String notebook : notebookComboBox.getItems()) {
@@ -410,12 +462,10 @@ public class NotesController {
                         List<NoteEntry> noteEntriesToBeMoved = notesTable.getSelectionModel().getSelectedItems();
                         try {
                             service.moveNotes(noteEntriesToBeMoved, selectedNotebook, destinationNotebook);
-                            observableNoteEntryList.removeAll(noteEntriesToBeMoved);
                             notificationText.setText(MOVE_STATUS_NOTIFICATION);
                         } catch (ControllerServiceException ex) {
                             alertHelper.showAlertWithExceptionDetails(parentStage, ex, "Failed to move Notes", "");
                         }
-                        notesTable.refresh();
                     });
                     moveMenu.getItems().add(menuItem);
                 }
@@ -458,26 +508,169 @@ public class NotesController {
     }
 
     protected void loadAllNoteEntries() {
-        List<NoteEntry> allNoteEntries;
-        allNoteEntries = service.getAll();
-        loadNoteEntries(allNoteEntries);
+        loadAllNoteEntries(false);
+    }
+
+    /**
+     * Reads the current notebook off the FX thread. Until it is read the table shows a loading state, and if another
+     * load or search is asked for meanwhile, this result is dropped.
+     */
+    private void loadAllNoteEntries(boolean oldestFirst) {
+        cancelPendingLoad();
+        long sequence = loadSequence;
+        String notebook = userPreferences.getCurrentNotebook();
+        notebookColumn.setVisible(false);
+        notesTable.setPlaceholder(new Label(LOADING_STATUS_NOTIFICATION));
+        notesTable.setItems(FXCollections.observableArrayList());
+        notificationText.setText(LOADING_STATUS_NOTIFICATION);
+        pendingLoad = loadExecutor.submit(() -> {
+            try {
+                PagedNoteEntryList allNoteEntries = new PagedNoteEntryList(service, notebook, oldestFirst);
+                allNoteEntries.setStaleListener(this::reloadStale);
+                if (!allNoteEntries.isEmpty()) {
+                    allNoteEntries.get(0); // first page is read here rather than on the FX thread
+                }
+                Platform.runLater(() -> {
+                    if (sequence == loadSequence) {
+                        notesTable.setPlaceholder(null);
+                        loadNoteEntries(allNoteEntries);
+                    }
+                });
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                showLoadFailure(sequence, ex, LOAD_FAILURE_STATUS_NOTIFICATION);
+            }
+        });
     }
 
-    protected void loadSearchedNoteEntries(String searchTxt) {
-        List<NoteEntry> noteEntries;
+    /**
+     * Searches once typing pauses for SEARCH_DEBOUNCE_MILLIS. A newer keystroke cancels a search not yet started, and
+     * the result of a search superseded while running is not shown.
+     */
+    private void scheduleSearch(String searchTxt) {
+        cancelPendingLoad();
+        long sequence = loadSequence;
         boolean searchInfoAlso = searchAllCheckBox.isSelected();
-        noteEntries = service.searchNotes(searchTxt, searchInfoAlso);
-        loadNoteEntries(noteEntries);
+        boolean searchAllNotebooks = searchAllNotebooksCheckBox.isSelected();
+        pendingLoad = loadExecutor.schedule(() -> {
+            try {
+                List<NoteEntry> noteEntries = searchNoteEntries(searchTxt, searchInfoAlso, searchAllNotebooks);
+                Platform.runLater(() -> {
+                    if (sequence == loadSequence) {
+                        notesTable.setPlaceholder(null);
+                        notebookColumn.setVisible(searchAllNotebooks);
+                        showSearchedNoteEntries(noteEntries);
+                    }
+                });
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                showLoadFailure(sequence, ex, SEARCH_FAILURE_STATUS_NOTIFICATION);
+            }
+        }, SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
     }
 
-    private void loadNoteEntries(List<NoteEntry> noteEntries) {
-        observableNoteEntryList = FXCollections.observableArrayList();
-        observableNoteEntryList.addAll(noteEntries);
+    /**
+     * Called off the FX thread. Unless another load or search has been asked for since, the table is emptied, so that
+     * neither a loading state nor stale notes are left on it, and the failure is shown.
+     */
+    private void showLoadFailure(long sequence, Exception ex, String failureNotification) {
+        Platform.runLater(() -> {
+            if (sequence == loadSequence) {
+                notesTable.setPlaceholder(new Label(failureNotification));
+                loadNoteEntries(FXCollections.observableArrayList());
+                notificationText.setText(failureNotification);
+                alertHelper.showAlertWithExceptionDetails(parentStage, ex, failureNotification, "");
+            }
+        });
+    }
+
+    private void cancelPendingLoad() {
+        loadSequence++;
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+            pendingLoad = null;
+        }
+    }
+
+    private List<NoteEntry> searchNoteEntries(String searchTxt, boolean searchInfoAlso, boolean searchAllNotebooks) {
+        if (searchAllNotebooks) {
+            return service.searchAllNotebooks(searchTxt, searchInfoAlso);
+        } else {
+            return service.searchNotes(searchTxt, searchInfoAlso);
+        }
+    }
+
+    private void loadNoteEntries(ObservableList<NoteEntry> noteEntries) {
+        observableNoteEntryList = noteEntries;
         notesTable.setItems(observableNoteEntryList);
-        notesTable.refresh();
         notificationText.setText("Total Notes : " + observableNoteEntryList.size());
     }
 
+    /**
+     * When search results are already shown, only the difference to the new results is applied to them.
+     */
+    private void showSearchedNoteEntries(List<NoteEntry> noteEntries) {
+        if (observableNoteEntryList == null || observableNoteEntryList instanceof PagedNoteEntryList
+                || notesTable.getItems() != observableNoteEntryList) {
+            loadNoteEntries(FXCollections.observableArrayList(noteEntries));
+        } else {
+            NoteEntryListDiff.apply(observableNoteEntryList, noteEntries);
+            notificationText.setText("Total Notes : " + observableNoteEntryList.size());
+        }
+    }
+
+    /**
+     * Brings the shown notes up to date with a write, made here or elsewhere. Edits of search results show up by
+     * themselves through the NoteEntry properties, all notes are in modification order so an edit moves the note.
+     */
+    private void applyChange(NoteEntryChangeEvent changeEvent) {
+        if (observableNoteEntryList == null || notesTable.getItems() != observableNoteEntryList) {
+            return; // a load is on its way, it reads the notes after this write
+        }
+        List<NoteEntry> noteEntries = changeEvent.getNoteEntries();
+        if (observableNoteEntryList instanceof PagedNoteEntryList) {
+            PagedNoteEntryList pagedNoteEntries = (PagedNoteEntryList) observableNoteEntryList;
+            if (!changeEvent.getNotebook().equals(pagedNoteEntries.getNotebook())) {
+                return;
+            }
+            boolean applied = true;
+            if (changeEvent.getType() == NoteEntryChangeEvent.Type.ADDED) {
+                applied = pagedNoteEntries.added(noteEntries.size());
+            } else if (changeEvent.getType() == NoteEntryChangeEvent.Type.EDITED) {
+                applied = pagedNoteEntries.edited(noteEntries);
+            } else if (changeEvent.getType() == NoteEntryChangeEvent.Type.DELETED) {
+                applied = pagedNoteEntries.removed(noteEntries);
+            }
+            if (!applied) {
+                loadNoteEntries(pagedNoteEntries.reload());
+            }
+        } else if (changeEvent.getType() == NoteEntryChangeEvent.Type.ADDED) {
+            // Only the added notes matching the search are to be shown, so the search is run again
+            String searchTxt = searchField.getText();
+            if (StringUtils.isNotBlank(searchTxt)) {
+                scheduleSearch(searchTxt);
+            }
+        } else if (changeEvent.getType() == NoteEntryChangeEvent.Type.DELETED) {
+            observableNoteEntryList.removeAll(new HashSet<>(noteEntries));
+        }
+    }
+
+    /**
+     * Called while the table reads rows, so the stale list is only replaced once that is over.
+     */
+    private void reloadStale(PagedNoteEntryList staleNoteEntries) {
+        Platform.runLater(() -> {
+            if (notesTable.getItems() == staleNoteEntries) {
+                loadNoteEntries(staleNoteEntries.reload());
+            }
+        });
+    }
+
+    private boolean isPlaceholder(NoteEntry noteEntry) {
+        return observableNoteEntryList instanceof PagedNoteEntryList
+                && ((PagedNoteEntryList) observableNoteEntryList).isPlaceholder(noteEntry);
+    }
+
     @FXML
     protected void deleteNoteEntries() {
         try {
@@ -493,10 +686,8 @@ public class NotesController {
                         contentText);
                 if (result.get() == ButtonType.OK) {
                     service.deleteNoteEntries(noteEntriesToBeDeleted);
-                    observableNoteEntryList.removeAll(noteEntriesToBeDeleted);
                     infoField.clear();
                     this.selectedNoteEntry = null;
-                    notesTable.refresh();
                     notificationText.setText(DELETE_STATUS_NOTIFICATION);
                 }
             }
@@ -527,8 +718,6 @@ public class NotesController {
             // controller.setNoteEntryList(observableNoteEntryList);
             controller.setMode(NoteEntryController.MODE_ADD);
             controller.setRunAfter(() -> {
-                observableNoteEntryList.add(newNoteEntry);
-                notesTable.refresh();
                 notificationText.setText(ADD_STATUS_NOTIFICATION);
             });
 
@@ -601,13 +790,13 @@ public class NotesController {
 
             NoteEntryController controller = loader.getController();
             controller.setParentStage(noteEntryStage);
-            controller.setNoteEntry(selectedNoteEntry);
+            NoteEntry noteEntryToBeEdited = selectedNoteEntry;
+            controller.setNoteEntry(noteEntryToBeEdited);
             // controller.setNoteEntryList(observableNoteEntryList);
             controller.setMode(NoteEntryController.MODE_EDIT);
             controller.setRunAfter(() -> {
-                notesTable.refresh();
                 notificationText.setText(EDIT_STATUS_NOTIFICATION);
-                infoField.setText(notesTable.getSelectionModel().getSelectedItem().getInfo());
+                infoField.setText(noteEntryToBeEdited.getInfo());
                 // infoField.requestFocus();
             });
 
@@ -626,12 +815,14 @@ public class NotesController {
     @FXML
     protected void sortByModificationDate() {
         boolean isSelected = sortToggleButton.isSelected();
-        if (isSelected) {
+        if (!showingSearchedResults) {
+            // The index already returns all notes latest modified first
+            loadAllNoteEntries(isSelected);
+        } else if (isSelected) {
             Collections.sort(observableNoteEntryList, comparator);
         } else {
             Collections.sort(observableNoteEntryList, comparator.reversed());
         }
-        notesTable.refresh();
     }
 
     @FXML
@@ -643,7 +834,10 @@ public class NotesController {
     protected void renameNotebook() {
         notebookActions.renameNotebook();
         String notebookNewName = notebookComboBox.getSelectionModel().getSelectedItem();
-        observableNoteEntryList.forEach((noteEntry) -> noteEntry.setNotebook(notebookNewName));
+        // All notes are read again from the renamed notebook once it is selected
+        if (!(observableNoteEntryList instanceof PagedNoteEntryList)) {
+            observableNoteEntryList.forEach((noteEntry) -> noteEntry.setNotebook(notebookNewName));
+        }
     }
 
     @FXML
@@ -653,7 +847,7 @@ public class NotesController {
 
     @FXML
     protected void exportNotebook() {
-        String exprtFilePath = ioHelper.exportNotebook(observableNoteEntryList);
+        String exprtFilePath = service.exportNotebook();
         if (exprtFilePath != null) {
             notificationText.setText(String.format(EXPORT_SUCCESS_STATUS_NOTIFICATION, exprtFilePath));
         } else {
@@ -678,12 +872,8 @@ public class NotesController {
                 notificationText.setText(IMPORT_FAILURE_STATUS_NOTIFICATION);
             } else {
                 try {
-                    for (NoteEntry note : noteEntries) {
-                        service.addNoteEntry(note);
-                        observableNoteEntryList.add(note);
-                    }
+                    service.addNoteEntries(noteEntries);
                     notificationText.setText(String.format(IMPORT_SUCCESS_STATUS_NOTIFICATION, noteEntries.size()));
-                    notesTable.refresh();
                 } catch (ControllerServiceException ex) {
                     notificationText.setText(IMPORT_FAILURE_STATUS_NOTIFICATION);
                 }
@@ -700,6 +890,7 @@ public class NotesController {
 
     @FXML
     private void exitJNote() {
+        APP_CONFIG.close(); // System.exit does not go through JNotesApplication.stop()
         System.exit(0);
     }
 
@@ -0,0 +1,267 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ * 
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * 
+ */
+package com.jc.jnotes.viewcontroller;
+
+import static com.jc.jnotes.JNotesConstants.NOTES_TABLE_CACHED_PAGES;
+import static com.jc.jnotes.JNotesConstants.NOTES_TABLE_PAGE_SIZE;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.jc.jnotes.dao.local.NoteEntryPage;
+import com.jc.jnotes.model.NoteEntry;
+import com.jc.jnotes.service.ControllerService;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * 
+ * Read only list of all notes of a notebook for the notes table. Only the size is read upfront, rows are read a page
+ * at a time when the table asks for them and the latest NOTES_TABLE_CACHED_PAGES pages are kept.
+ * 
+ * The list does not follow later writes to the notebook by itself. Tell it about notes added, edited or removed through
+ * added/edited/removed, or use reload() to get a list of the current notes.
+ * 
+ * @author Joy C
+ *
+ */
+public class PagedNoteEntryList extends ObservableListBase<NoteEntry> {
+
+    private final ControllerService service;
+    private final String notebook;
+    // false: latest modified first. Pages are read in this order, so rows are read forward whichever the order.
+    private final boolean oldestFirst;
+    private int size;
+
+    private final Map<Integer, List<NoteEntry>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<NoteEntry>> eldest) {
+            return size() > NOTES_TABLE_CACHED_PAGES;
+        }
+    };
+    // Position of the end of each page read so far, so that a page is read forward from the nearest one before it
+    private final TreeMap<Integer, NoteEntryPage> pageEnds = new TreeMap<>();
+    // Empty rows standing in, by index, for notes deleted without this list being told, until it is reloaded
+    private final Map<Integer, NoteEntry> placeholders = new HashMap<>();
+    private Consumer<PagedNoteEntryList> staleListener = (staleList) -> {
+    };
+    private boolean stale;
+
+    public PagedNoteEntryList(ControllerService service, String notebook, boolean oldestFirst) {
+        this.service = service;
+        this.notebook = notebook;
+        this.oldestFirst = oldestFirst;
+        this.size = service.getNoteEntryCount(notebook);
+    }
+
+    public PagedNoteEntryList reload() {
+        PagedNoteEntryList reloaded = new PagedNoteEntryList(service, notebook, oldestFirst);
+        reloaded.setStaleListener(staleListener);
+        return reloaded;
+    }
+
+    /**
+     * staleListener is called, at most once per list, when a page turns out to be short because the notebook has
+     * changed without this list being told. It is called from get(), i.e. while the table lays out its rows, so it
+     * should only schedule a reload().
+     */
+    public void setStaleListener(Consumer<PagedNoteEntryList> staleListener) {
+        this.staleListener = staleListener;
+    }
+
+    /**
+     * 
+     * @return true if noteEntry is an empty row standing in for a note which is gone, it is not to be edited
+     */
+    public boolean isPlaceholder(NoteEntry noteEntry) {
+        return placeholders.containsValue(noteEntry);
+    }
+
+    /**
+     * Notes just saved are the latest modified, so they show up on top (at the bottom when oldestFirst).
+     * 
+     * @return false if the notebook has changed by more than count added notes, use reload() then
+     */
+    public boolean added(int count) {
+        int newSize = service.getNoteEntryCount(notebook);
+        if (newSize != size + count) {
+            return false;
+        }
+        int from = oldestFirst ? size : 0;
+        clearPages();
+        size = newSize;
+        beginChange();
+        nextAdd(from, from + count);
+        endChange();
+        return true;
+    }
+
+    /**
+     * A note just edited is the latest modified, so it moves to the top (to the bottom when oldestFirst) and the rows it
+     * passes move by one.
+     * 
+     * @return false if the edit cannot be followed that way: more than one note, a note not among the rows read so far,
+     *         a note which is not the latest modified now, or the notebook has changed otherwise as well. Use reload()
+     *         then.
+     */
+    public boolean edited(List<NoteEntry> noteEntries) {
+        if (noteEntries.size() != 1) {
+            return false;
+        }
+        NoteEntry noteEntry = noteEntries.get(0);
+        int index = indexOfRead(noteEntry);
+        if (index < 0 || service.getNoteEntryCount(notebook) != size) {
+            return false;
+        }
+        // The order has changed, every page read so far is stale
+        clearPages();
+        int newIndex = oldestFirst ? size - 1 : 0;
+        if (!noteEntry.equals(get(newIndex))) {
+            return false;
+        }
+        beginChange();
+        if (index == newIndex) {
+            nextUpdate(index);
+        } else if (oldestFirst) {
+            int[] permutation = new int[size - index];
+            permutation[0] = newIndex;
+            for (int i = index + 1; i < size; i++) {
+                permutation[i - index] = i - 1;
+            }
+            nextPermutation(index, size, permutation);
+        } else {
+            int[] permutation = new int[index + 1];
+            permutation[index] = newIndex;
+            for (int i = 0; i < index; i++) {
+                permutation[i] = i + 1;
+            }
+            nextPermutation(0, index + 1, permutation);
+        }
+        endChange();
+        return true;
+    }
+
+    /**
+     * 
+     * @return false if any of noteEntries is not among the rows read so far, or the notebook has changed otherwise as
+     *         well, use reload() then
+     */
+    public boolean removed(List<NoteEntry> noteEntries) {
+        TreeMap<Integer, NoteEntry> removedByIndex = new TreeMap<>(Comparator.reverseOrder());
+        for (NoteEntry noteEntry : noteEntries) {
+            int index = indexOfRead(noteEntry);
+            if (index < 0) {
+                return false;
+            }
+            removedByIndex.put(index, get(index));
+        }
+        int newSize = service.getNoteEntryCount(notebook);
+        if (newSize != size - removedByIndex.size()) {
+            return false;
+        }
+        clearPages();
+        size = newSize;
+        beginChange();
+        removedByIndex.forEach(this::nextRemove); // last first, so that the indexes stay valid
+        endChange();
+        return true;
+    }
+
+    public String getNotebook() {
+        return notebook;
+    }
+
+    /**
+     * 
+     * @return a placeholder (see isPlaceholder) if the entry at index was deleted after this list was created
+     */
+    @Override
+    public NoteEntry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int pageIndex = index / NOTES_TABLE_PAGE_SIZE;
+        List<NoteEntry> page = pages.get(pageIndex);
+        if (page == null) {
+            page = readPage(pageIndex);
+            pages.put(pageIndex, page);
+        }
+        int positionInPage = index % NOTES_TABLE_PAGE_SIZE;
+        if (positionInPage < page.size()) {
+            return page.get(positionInPage);
+        }
+        if (!stale && service.getNoteEntryCount(notebook) != size) {
+            stale = true;
+            staleListener.accept(this);
+        }
+        return placeholders.computeIfAbsent(index,
+                (missingIndex) -> new NoteEntry(notebook, NoteEntry.generateID(), "", "", "", "N"));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int indexOfRead(NoteEntry noteEntry) {
+        for (Map.Entry<Integer, List<NoteEntry>> page : pages.entrySet()) {
+            int positionInPage = page.getValue().indexOf(noteEntry);
+            if (positionInPage >= 0) {
+                return page.getKey() * NOTES_TABLE_PAGE_SIZE + positionInPage;
+            }
+        }
+        return -1;
+    }
+
+    private void clearPages() {
+        pages.clear();
+        pageEnds.clear();
+        placeholders.clear();
+    }
+
+    /**
+     * Reads forward from the end of the nearest page before it read so far, so only the pages in between are skipped
+     * over rather than all pages from the top.
+     */
+    private List<NoteEntry> readPage(int pageIndex) {
+        NoteEntryPage noteEntryPage;
+        Map.Entry<Integer, NoteEntryPage> nearestPageEnd = pageEnds.lowerEntry(pageIndex);
+        if (nearestPageEnd == null) {
+            noteEntryPage = service.getNoteEntryPage(notebook, null, pageIndex * NOTES_TABLE_PAGE_SIZE, NOTES_TABLE_PAGE_SIZE,
+                    oldestFirst);
+        } else if (nearestPageEnd.getKey() == pageIndex - 1) {
+            noteEntryPage = service.getNoteEntryPage(notebook, nearestPageEnd.getValue(), NOTES_TABLE_PAGE_SIZE, oldestFirst);
+        } else {
+            int skipped = (pageIndex - 1 - nearestPageEnd.getKey()) * NOTES_TABLE_PAGE_SIZE;
+            noteEntryPage = service.getNoteEntryPage(notebook, nearestPageEnd.getValue(), skipped, NOTES_TABLE_PAGE_SIZE,
+                    oldestFirst);
+        }
+        pageEnds.put(pageIndex, new NoteEntryPage(Collections.emptyList(), noteEntryPage.getCursor()));
+        return noteEntryPage.getNoteEntries();
+    }
+
+}
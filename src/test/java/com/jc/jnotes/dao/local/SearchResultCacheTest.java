@@ -0,0 +1,55 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SearchResultCacheTest {
+
+    private final SearchResultCache<String> cache = new SearchResultCache<>(2);
+
+    @Test
+    void hitsWhileGenerationIsUnchanged() {
+        assertEquals("result1", cache.get(List.of("notebook", "key"), 1, () -> "result1"));
+        assertEquals("result1", cache.get(List.of("notebook", "key"), 1, () -> "result2"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // a write moves the notebook to a new generation
+        assertEquals("result2", cache.get(List.of("notebook", "key"), 2, () -> "result2"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        cache.get(List.of("a"), 1, () -> "a");
+        cache.get(List.of("b"), 1, () -> "b");
+        cache.get(List.of("a"), 1, () -> "a2"); // a is now the most recently used
+        cache.get(List.of("c"), 1, () -> "c"); // evicts b
+
+        assertEquals("a", cache.get(List.of("a"), 1, () -> "a3"));
+        assertEquals("b2", cache.get(List.of("b"), 1, () -> "b2"));
+    }
+
+}
@@ -20,20 +20,46 @@ package com.jc.jnotes.dao.local.lucene;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.jc.jnotes.UserPreferences;
 import com.jc.jnotes.dao.local.LocalNoteEntryDao;
+import com.jc.jnotes.dao.local.NoteEntryChangeEvent;
+import com.jc.jnotes.dao.local.NoteEntryPage;
+import com.jc.jnotes.dao.local.ScoredNoteEntry;
 import com.jc.jnotes.model.NoteEntry;
 
 public class LuceneNoteEntryDaoTest {
@@ -49,6 +75,11 @@ public class LuceneNoteEntryDaoTest {
         dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
     }
 
+    @AfterEach
+    void closeDao() {
+        dao.close();
+    }
+
     @AfterAll
     static void clearIndexesAfterTests() throws IOException {
         deleteIndexDirectory();
@@ -93,7 +124,9 @@ public class LuceneNoteEntryDaoTest {
 
         dao.getAll(userPreferences.getCurrentNotebook()).stream().forEach((ne) -> System.out.println("deleteNoteEntryTest before: " + ne));
 
+        long generation = dao.getGeneration();
         dao.deleteNoteEntry(noteEntry1);
+        assertNotEquals(generation, dao.getGeneration());
 
         dao.getAll(userPreferences.getCurrentNotebook()).stream().forEach((ne) -> System.out.println("deleteNoteEntryTest after: " + ne));
 
@@ -163,6 +196,428 @@ public class LuceneNoteEntryDaoTest {
         assertEquals("key1", noteEntries.get(1).getKey());
     }
 
+    @Test
+    void reopenAfterCloseTest() throws IOException {
+        String id1 = UUID.randomUUID().toString();
+        // Millis are kept as they are, not cut down to seconds
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), id1, "key1", "value1", "info1", "N", 1589900000123L);
+        dao.addNoteEntry(noteEntry1);
+        dao.close();
+
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        List<NoteEntry> noteEntries = dao.getAll(userPreferences.getCurrentNotebook());
+        assertEquals(1, noteEntries.size());
+        assertEquals(id1, noteEntries.get(0).getId());
+        assertEquals(1589900000123L, noteEntries.get(0).getLastModifiedMillis());
+    }
+
+    @Test
+    void lastModifiedTimeOrderAndRangeTest() throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        String id1 = UUID.randomUUID().toString();
+        String id2 = UUID.randomUUID().toString();
+        String id3 = UUID.randomUUID().toString();
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), id1, "key1", "value1", "info1", "N", now.minusDays(1));
+        NoteEntry noteEntry2 = new NoteEntry(userPreferences.getCurrentNotebook(), id2, "key2", "value2", "info2", "N", now.minusDays(10));
+        NoteEntry noteEntry3 = new NoteEntry(userPreferences.getCurrentNotebook(), id3, "key3", "value3", "info3", "N", now.minusDays(5));
+        dao.addNoteEntry(noteEntry1);
+        dao.addNoteEntry(noteEntry2);
+        dao.addNoteEntry(noteEntry3);
+
+        List<NoteEntry> noteEntries = dao.getAll(userPreferences.getCurrentNotebook());
+        assertEquals(List.of(noteEntry1, noteEntry3, noteEntry2), noteEntries);
+
+        noteEntries = dao.getModifiedBetween(now.minusDays(7), now);
+        assertEquals(List.of(noteEntry1, noteEntry3), noteEntries);
+    }
+
+    @Test
+    void bulkAddAndUpsertTest() throws IOException {
+        List<NoteEntry> noteEntries = new ArrayList<>();
+        for (int i = 0; i < 10050; i++) {
+            noteEntries.add(new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key" + i, "value" + i,
+                    "info" + i, "N"));
+        }
+        dao.addNoteEntries(noteEntries);
+        assertEquals(10050, dao.getAll(userPreferences.getCurrentNotebook()).size());
+
+        NoteEntry editedNoteEntry = noteEntries.get(0);
+        editedNoteEntry.setValue("editedValue");
+        NoteEntry newNoteEntry = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "newKey", "newValue",
+                "newInfo", "N");
+        dao.upsertNoteEntries(List.of(editedNoteEntry, newNoteEntry));
+
+        List<NoteEntry> allNoteEntries = dao.getAll(userPreferences.getCurrentNotebook());
+        assertEquals(10051, allNoteEntries.size());
+        assertEquals(1, dao.searchNotes("editedvalue", false).size());
+        assertEquals(1, dao.searchNotes("newkey", false).size());
+    }
+
+    @Test
+    void lazyInfoTest() throws IOException {
+        String id1 = UUID.randomUUID().toString();
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), id1, "key1", "value1", "line1\nline2", "N");
+        dao.addNoteEntry(noteEntry1);
+
+        assertEquals("line1\nline2", dao.getInfo(id1));
+        assertNull(dao.getInfo(UUID.randomUUID().toString()));
+
+        NoteEntry listedNoteEntry = dao.getAll(userPreferences.getCurrentNotebook()).get(0);
+        dao.editNoteEntry(new NoteEntry(userPreferences.getCurrentNotebook(), id1, "key1", "value1", "line3", "N"));
+        assertEquals("line3", listedNoteEntry.getInfo()); // read on first access
+
+        List<NoteEntry> walkedNoteEntries = new ArrayList<>();
+        dao.forEachPage(userPreferences.getCurrentNotebook(), 10, walkedNoteEntries::addAll);
+        dao.deleteNoteEntry(noteEntry1);
+        assertEquals("line3", walkedNoteEntries.get(0).getInfo()); // read along with the page
+    }
+
+    @Test
+    void pagingTest() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            dao.addNoteEntry(new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key" + i, "value" + i,
+                    "info" + i, "N"));
+        }
+        List<NoteEntry> allNoteEntries = dao.getAll(userPreferences.getCurrentNotebook());
+
+        List<NoteEntry> pagedNoteEntries = new ArrayList<>();
+        NoteEntryPage page = dao.getPage(null, 2);
+        pagedNoteEntries.addAll(page.getNoteEntries());
+        while (page.hasNext()) {
+            page = dao.getPage(page, 2);
+            assertTrue(page.getNoteEntries().size() <= 2);
+            pagedNoteEntries.addAll(page.getNoteEntries());
+        }
+        assertEquals(allNoteEntries, pagedNoteEntries);
+
+        List<Integer> pageSizes = new ArrayList<>();
+        List<NoteEntry> walkedNoteEntries = new ArrayList<>();
+        dao.forEachPage(userPreferences.getCurrentNotebook(), 2, (noteEntries) -> {
+            pageSizes.add(noteEntries.size());
+            walkedNoteEntries.addAll(noteEntries);
+        });
+        assertEquals(List.of(2, 2, 1), pageSizes);
+        assertEquals(allNoteEntries, walkedNoteEntries);
+        assertEquals("key5", walkedNoteEntries.get(0).getKey());
+
+        assertEquals(5, dao.getCount());
+        assertEquals(allNoteEntries.subList(2, 4), dao.getPage(2, 2).getNoteEntries());
+        assertTrue(dao.getPage(2, 2).hasNext());
+        page = dao.getPage(4, 2);
+        assertEquals(allNoteEntries.subList(4, 5), page.getNoteEntries());
+        assertFalse(page.hasNext());
+        assertTrue(dao.getPage(6, 2).getNoteEntries().isEmpty());
+        // Skipping forward from a page read before
+        page = dao.getPage(null, 1);
+        assertEquals(allNoteEntries.subList(3, 5), dao.getPage(page, 2, 2).getNoteEntries());
+
+        // Oldest first, the reverse of getAll, read forward page by page as well
+        List<NoteEntry> oldestFirstNoteEntries = new ArrayList<>(allNoteEntries);
+        Collections.reverse(oldestFirstNoteEntries);
+        pagedNoteEntries.clear();
+        page = dao.getPage(null, 0, 2, true);
+        pagedNoteEntries.addAll(page.getNoteEntries());
+        while (page.hasNext()) {
+            page = dao.getPage(page, 0, 2, true);
+            pagedNoteEntries.addAll(page.getNoteEntries());
+        }
+        assertEquals(oldestFirstNoteEntries, pagedNoteEntries);
+        assertEquals(oldestFirstNoteEntries.subList(3, 5), dao.getPage(dao.getPage(null, 0, 1, true), 2, 2, true).getNoteEntries());
+
+        dao.deleteNoteEntry(allNoteEntries.get(0));
+        assertEquals(4, dao.getCount());
+    }
+
+    @Test
+    void changeListenerTest() throws IOException {
+        List<NoteEntryChangeEvent> changeEvents = new ArrayList<>();
+        dao.addChangeListener((changeEvent) -> {
+            throw new IllegalStateException("A failing listener must not fail the write");
+        });
+        Consumer<NoteEntryChangeEvent> listener = changeEvents::add;
+        dao.addChangeListener(listener);
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key1", "value1", "info1", "N");
+        NoteEntry noteEntry2 = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key2", "value2", "info2", "N");
+
+        dao.addNoteEntry(noteEntry1);
+        dao.addNoteEntries(List.of(noteEntry2));
+        noteEntry1.setKey("key3");
+        dao.editNoteEntry(noteEntry1);
+        dao.deleteNoteEntries(List.of(noteEntry1, noteEntry2));
+
+        assertEquals(4, changeEvents.size());
+        assertEquals(NoteEntryChangeEvent.Type.ADDED, changeEvents.get(0).getType());
+        assertEquals(List.of(noteEntry1.getId()), changeEvents.get(0).getIds());
+        assertEquals(NoteEntryChangeEvent.Type.ADDED, changeEvents.get(1).getType());
+        assertEquals(List.of(noteEntry2.getId()), changeEvents.get(1).getIds());
+        assertEquals(NoteEntryChangeEvent.Type.EDITED, changeEvents.get(2).getType());
+        assertEquals(NoteEntryChangeEvent.Type.DELETED, changeEvents.get(3).getType());
+        assertEquals(List.of(noteEntry1.getId(), noteEntry2.getId()), changeEvents.get(3).getIds());
+        assertEquals(userPreferences.getCurrentNotebook(), changeEvents.get(3).getNotebook());
+        assertTrue(dao.getAll(userPreferences.getCurrentNotebook()).isEmpty());
+
+        dao.removeChangeListener(listener);
+        dao.addNoteEntry(noteEntry1);
+        assertEquals(4, changeEvents.size());
+    }
+
+    @Test
+    void syncStateTest() throws IOException, InterruptedException {
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key1", "value1", "info1", "N");
+        NoteEntry noteEntry2 = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key2", "value2", "info2", "N");
+        dao.addNoteEntries(List.of(noteEntry1, noteEntry2));
+        assertEquals(0, dao.getLastSyncedMillis());
+        assertTrue(dao.getDeletedIds().isEmpty());
+
+        dao.deleteNoteEntry(noteEntry2);
+        List<NoteEntry> written = new ArrayList<>();
+        dao.forEachWrittenSince(0, 10, written::addAll);
+        assertEquals(List.of(noteEntry1), written);
+        assertTrue(dao.getDeletedIds().isEmpty()); // never synced, so nothing to tell the remote store about
+
+        long syncedMillis = System.currentTimeMillis() + 1;
+        dao.markSynced(syncedMillis, dao.getDeletedIds());
+        Thread.sleep(10);
+        // An older lastModifiedTime must not hide a write made after the sync
+        NoteEntry noteEntry3 = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key3", "value3", "info3", "N",
+                LocalDateTime.now().minusDays(10));
+        dao.addNoteEntry(noteEntry3);
+        dao.deleteNoteEntry(noteEntry1);
+        dao.close();
+
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        assertEquals(syncedMillis, dao.getLastSyncedMillis());
+        assertEquals(List.of(noteEntry1.getId()), dao.getDeletedIds());
+        written.clear();
+        dao.forEachWrittenSince(syncedMillis, 10, written::addAll);
+        assertEquals(List.of(noteEntry3), written);
+        assertEquals("info3", written.get(0).getInfo());
+
+        dao.resetSyncState();
+        assertEquals(0, dao.getLastSyncedMillis());
+        assertTrue(dao.getDeletedIds().isEmpty());
+    }
+
+    @Test
+    void restoredEntriesAreNotWrittenSinceTest() throws IOException {
+        NoteEntry restored = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key1", "value1", "info1", "N");
+        NoteEntry added = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key2", "value2", "info2", "N");
+        dao.restoreNoteEntries(List.of(restored));
+        dao.addNoteEntry(added);
+
+        assertEquals(2, dao.getCount());
+        List<NoteEntry> written = new ArrayList<>();
+        dao.forEachWrittenSince(0, 10, written::addAll);
+        assertEquals(List.of(added), written);
+
+        dao.editNoteEntry(restored); // written again, so it is to be backed up
+        written.clear();
+        dao.forEachWrittenSince(0, 10, written::addAll);
+        assertEquals(2, written.size());
+    }
+
+    @Test
+    void searchNotesRankingAndLimitTest() throws IOException {
+        String id1 = UUID.randomUUID().toString();
+        String id2 = UUID.randomUUID().toString();
+        String id3 = UUID.randomUUID().toString();
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), id1, "alpha", "beta", "match", "N");//info match
+        NoteEntry noteEntry2 = new NoteEntry(userPreferences.getCurrentNotebook(), id2, "gamma", "match", "match", "N");//value+info match
+        NoteEntry noteEntry3 = new NoteEntry(userPreferences.getCurrentNotebook(), id3, "match", "delta", "epsilon", "N");//key match
+        dao.addNoteEntry(noteEntry1);
+        dao.addNoteEntry(noteEntry2);
+        dao.addNoteEntry(noteEntry3);
+
+        List<NoteEntry> noteEntries = dao.searchNotes("atc", true);
+        assertEquals(3, noteEntries.size());
+        assertEquals(id3, noteEntries.get(0).getId());
+        assertEquals(id2, noteEntries.get(1).getId());
+        assertEquals(id1, noteEntries.get(2).getId());
+
+        noteEntries = dao.searchNotes("atc", true, 2);
+        assertEquals(2, noteEntries.size());
+        assertEquals(id3, noteEntries.get(0).getId());
+        assertEquals(id2, noteEntries.get(1).getId());
+
+        // Scores depend only on which fields matched, so they can be merged across notebooks
+        List<ScoredNoteEntry> scoredNoteEntries = dao.searchScoredNotes("atc", true, 3);
+        assertTrue(scoredNoteEntries.get(0).getScore() > scoredNoteEntries.get(1).getScore());
+        assertTrue(scoredNoteEntries.get(1).getScore() > scoredNoteEntries.get(2).getScore());
+        assertEquals(id1, scoredNoteEntries.get(2).getNoteEntry().getId());
+    }
+
+    @Test
+    void searchNotesRefinementTest() throws IOException {
+        String id1 = UUID.randomUUID().toString();
+        String id2 = UUID.randomUUID().toString();
+        String id3 = UUID.randomUUID().toString();
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), id1, "data", "other", "database", "N");
+        NoteEntry noteEntry2 = new NoteEntry(userPreferences.getCurrentNotebook(), id2, "date", "database", "x", "N");
+        NoteEntry noteEntry3 = new NoteEntry(userPreferences.getCurrentNotebook(), id3, "update", "a data b", "x", "N");
+        dao.addNoteEntry(noteEntry1);
+        dao.addNoteEntry(noteEntry2);
+        dao.addNoteEntry(noteEntry3);
+
+        List<ScoredNoteEntry> scoredNoteEntries = dao.searchScoredNotes("dat", true, 10);
+        assertEquals(3, scoredNoteEntries.size());
+
+        // Extends "dat", so it narrows the previous hits; order and scores must match a fresh query
+        scoredNoteEntries = dao.searchScoredNotes("data", true, 10);
+        assertEquals(3, scoredNoteEntries.size());
+        assertEquals(id1, scoredNoteEntries.get(0).getNoteEntry().getId());
+        assertEquals(id2, scoredNoteEntries.get(1).getNoteEntry().getId());
+        assertEquals(id3, scoredNoteEntries.get(2).getNoteEntry().getId());
+        assertEquals("database", scoredNoteEntries.get(0).getNoteEntry().getInfo());
+        List<ScoredNoteEntry> refined = scoredNoteEntries;
+
+        scoredNoteEntries = dao.searchScoredNotes("database", true, 10);
+        assertEquals(2, scoredNoteEntries.size());
+        assertEquals(id2, scoredNoteEntries.get(0).getNoteEntry().getId());
+        assertEquals(id1, scoredNoteEntries.get(1).getNoteEntry().getId());
+
+        dao.close();
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        List<ScoredNoteEntry> fresh = dao.searchScoredNotes("data", true, 10);
+        assertEquals(refined.size(), fresh.size());
+        for (int i = 0; i < fresh.size(); i++) {
+            assertEquals(fresh.get(i).getNoteEntry().getId(), refined.get(i).getNoteEntry().getId());
+            assertEquals(fresh.get(i).getScore(), refined.get(i).getScore());
+        }
+
+        // A write in between makes the previous hits stale
+        assertEquals(1, dao.searchNotes("datab", false).size());
+        NoteEntry noteEntry4 = new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "databank", "y", "z", "N");
+        dao.addNoteEntry(noteEntry4);
+        assertEquals(2, dao.searchNotes("databa", false).size());
+    }
+
+    @Test
+    void infoReadAfterDaoIsClosedTest() throws IOException {
+        String id = UUID.randomUUID().toString();
+        dao.addNoteEntry(new NoteEntry(userPreferences.getCurrentNotebook(), id, "key", "value", "info", "N"));
+        AtomicReference<LocalNoteEntryDao> currentDao = new AtomicReference<>(dao);
+        dao.setCurrentDaoLookup(currentDao::get);
+        List<NoteEntry> noteEntries = new ArrayList<>(dao.getPage(null, 10).getNoteEntries());
+        noteEntries.addAll(dao.getPage(null, 10).getNoteEntries());
+
+        // The entries are still shown while their notebook is reopened
+        dao.close();
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        currentDao.set(dao);
+        assertEquals("info", noteEntries.get(0).getInfo());
+
+        // or after it is gone
+        currentDao.set(null);
+        assertEquals("", noteEntries.get(1).getInfo());
+    }
+
+    @Test
+    void refinementOnlyReplacesWildcardQueriesTest() {
+        // n-gram term queries read only their own hits, a subset of the previous ones
+        assertFalse(LuceneNoteEntryDao.isRefinementCheaper(3, "data", false));
+        // Info and search strings longer than an n-gram need a wildcard query over the whole term dictionary
+        assertTrue(LuceneNoteEntryDao.isRefinementCheaper(3, "data", true));
+        assertTrue(LuceneNoteEntryDao.isRefinementCheaper(3, "a search string longer than an n-gram", false));
+        // Reloading many previous hits costs more than the query
+        assertFalse(LuceneNoteEntryDao.isRefinementCheaper(LuceneNoteEntryDao.MAX_REFINED_HITS + 1, "data", true));
+    }
+
+    @Test
+    void searchNotesLongSearchStringTest() throws IOException {
+        String id1 = UUID.randomUUID().toString();
+        String id2 = UUID.randomUUID().toString();
+        NoteEntry noteEntry1 = new NoteEntry(userPreferences.getCurrentNotebook(), id1, "averyveryverylongkey1", "value1", "info1", "N");
+        NoteEntry noteEntry2 = new NoteEntry(userPreferences.getCurrentNotebook(), id2, "key2", "value2", "info2", "N");
+        dao.addNoteEntry(noteEntry1);
+        dao.addNoteEntry(noteEntry2);
+
+        List<NoteEntry> noteEntries = dao.searchNotes("veryveryverylongkey", false);
+        assertEquals(1, noteEntries.size());
+        assertEquals(id1, noteEntries.get(0).getId());
+    }
+
+    @Test
+    void groupCommitTest() throws IOException {
+        dao.close();
+        Path indexPath = Paths.get(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        // Interval long enough that only the pending writes threshold or close() can commit
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook(), 3600000, 1000);
+        String id1 = UUID.randomUUID().toString();
+        dao.addNoteEntry(new NoteEntry(userPreferences.getCurrentNotebook(), id1, "key1", "value1", "info1", "N"));
+
+        assertEquals(1, dao.getAll(userPreferences.getCurrentNotebook()).size()); // visible before commit
+        assertEquals(0, committedDocs(indexPath));
+
+        dao.close();
+        assertEquals(1, committedDocs(indexPath));
+
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        assertEquals(id1, dao.getAll(userPreferences.getCurrentNotebook()).get(0).getId());
+    }
+
+    private int committedDocs(Path indexPath) throws IOException {
+        try (Directory directory = FSDirectory.open(indexPath); DirectoryReader reader = DirectoryReader.open(directory)) {
+            return reader.numDocs();
+        }
+    }
+
+    @Test
+    void upgradeIndexTest() throws IOException {
+        dao.close();
+        deleteIndexDirectory();
+        // Write a notebook the way versions without n-gram fields did
+        Path indexPath = Paths.get(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        String id1 = UUID.randomUUID().toString();
+        String id2 = UUID.randomUUID().toString();
+        try (Directory directory = FSDirectory.open(indexPath);
+                IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.addDocument(oldFormatDocument(id1, "key1"));
+            writer.addDocument(oldFormatDocument(id2, "key2"));
+            writer.commit();
+        }
+
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        List<NoteEntry> noteEntries = dao.searchNotes("ey2", false);
+        assertEquals(1, noteEntries.size());
+        assertEquals(id2, noteEntries.get(0).getId());
+
+        noteEntries = dao.getAll(userPreferences.getCurrentNotebook());
+        assertEquals(2, noteEntries.size());
+        assertEquals(id2, noteEntries.get(0).getId());
+        assertEquals(id1, noteEntries.get(1).getId());
+    }
+
+    @Test
+    void ngramFieldsIndexDocsOnlyTest() throws IOException {
+        dao.addNoteEntry(new NoteEntry(userPreferences.getCurrentNotebook(), UUID.randomUUID().toString(), "key1", "value1", "info1", "N"));
+        dao.close();
+
+        Path indexPath = Paths.get(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        try (Directory directory = FSDirectory.open(indexPath); DirectoryReader reader = DirectoryReader.open(directory)) {
+            FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+            for (String field : List.of(NoteEntry.KEY_COL_NAME, NoteEntry.VALUE_COL_NAME)) {
+                FieldInfo ngramFieldInfo = fieldInfos.fieldInfo(field + "_ngram");
+                assertEquals(IndexOptions.DOCS, ngramFieldInfo.getIndexOptions());
+                assertTrue(ngramFieldInfo.omitsNorms());
+            }
+            assertNull(fieldInfos.fieldInfo(NoteEntry.INFO_COL_NAME + "_ngram")); // info is searched by wildcard
+        }
+        dao = new LuceneNoteEntryDao(userPreferences.getBasePath(), TEST_INDX_DIR, userPreferences.getCurrentNotebook());
+        assertEquals(1, dao.searchNotes("ey1", false).size());
+        assertEquals(1, dao.searchNotes("nfo1", true).size());
+    }
+
+    private Document oldFormatDocument(String id, String key) {
+        Document document = new Document();
+        document.add(new StringField(NoteEntry.ID_COL_NAME, id, Field.Store.YES));
+        document.add(new TextField(NoteEntry.KEY_COL_NAME, key, Field.Store.YES));
+        document.add(new TextField(NoteEntry.VALUE_COL_NAME, "value", Field.Store.YES));
+        document.add(new TextField(NoteEntry.INFO_COL_NAME, "info", Field.Store.YES));
+        document.add(new TextField(NoteEntry.PASSWORD_FLAG_COL_NAME, "N", Field.Store.YES));
+        document.add(new StringField(NoteEntry.LAST_MODIFIED_TIME_COL_NAME, "01-01-2020 10:00:00", Field.Store.YES));
+        return document;
+    }
+
     //@Test
     void searchNotesWithSpacesTest() throws IOException {
         String id1 = UUID.randomUUID().toString();
@@ -0,0 +1,228 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import static com.jc.jnotes.dao.remote.GzipCodec.GZIP;
+import static com.jc.jnotes.dao.remote.GzipCodec.MIN_COMPRESSED_BODY_BYTES;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+public class GzipInterceptorTest {
+
+    private final GzipInterceptor interceptor = new GzipInterceptor();
+    // What each execution sent: Content-Encoding and body
+    private final List<String> sentEncodings = new ArrayList<>();
+    private final List<byte[]> sentBodies = new ArrayList<>();
+    // What each execution answers, the last one is repeated
+    private final Deque<ClientHttpResponse> responses = new ArrayDeque<>();
+
+    private final ClientHttpRequestExecution execution = (request, body) -> {
+        sentEncodings.add(request.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        sentBodies.add(body);
+        return responses.size() > 1 ? responses.poll() : responses.peek();
+    };
+
+    private ClientHttpResponse send(byte[] body) throws IOException {
+        return interceptor.intercept(new FakeRequest(), body, execution);
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        return body;
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Test
+    void compressedRoundTripTest() throws IOException {
+        byte[] requestBody = body(MIN_COMPRESSED_BODY_BYTES * 4);
+        byte[] responseBody = "{\"noteEntries\":[]}".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] compressedResponseBody = GzipCodec.compress(responseBody);
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+        responseHeaders.setContentLength(compressedResponseBody.length);
+        responses.add(new FakeResponse(HttpStatus.OK, responseHeaders, compressedResponseBody));
+
+        try (ClientHttpResponse response = send(requestBody)) {
+            assertEquals(List.of(GZIP), sentEncodings);
+            assertArrayEquals(requestBody, decompress(sentBodies.get(0)));
+            assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(-1, response.getHeaders().getContentLength());
+            assertArrayEquals(responseBody, response.getBody().readAllBytes());
+        }
+
+        TransferStats transferStats = interceptor.getTransferStats();
+        assertEquals(sentBodies.get(0).length, transferStats.getBytesSent());
+        assertEquals(requestBody.length, transferStats.getRawBytesSent());
+        assertEquals(compressedResponseBody.length, transferStats.getBytesReceived());
+        assertEquals(responseBody.length, transferStats.getRawBytesReceived());
+    }
+
+    @Test
+    void smallBodyIsNotCompressedTest() throws IOException {
+        responses.add(new FakeResponse(HttpStatus.OK));
+        byte[] requestBody = body(MIN_COMPRESSED_BODY_BYTES - 1);
+
+        send(requestBody).close();
+
+        assertEquals(1, sentEncodings.size());
+        assertNull(sentEncodings.get(0));
+        assertArrayEquals(requestBody, sentBodies.get(0));
+    }
+
+    @Test
+    void fallbackOnUnsupportedMediaTypeTest() throws IOException {
+        responses.add(new FakeResponse(HttpStatus.UNSUPPORTED_MEDIA_TYPE));
+        responses.add(new FakeResponse(HttpStatus.OK));
+        byte[] requestBody = body(MIN_COMPRESSED_BODY_BYTES);
+
+        try (ClientHttpResponse response = send(requestBody)) {
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+        }
+        assertEquals(GZIP, sentEncodings.get(0));
+        assertNull(sentEncodings.get(1));
+        assertArrayEquals(requestBody, sentBodies.get(1));
+
+        send(requestBody).close(); // no longer compressed
+        assertEquals(3, sentEncodings.size());
+        assertNull(sentEncodings.get(2));
+    }
+
+    @Test
+    void fallbackOnBadRequestOnlyWhenGzipIsNotAcceptedTest() throws IOException {
+        byte[] requestBody = body(MIN_COMPRESSED_BODY_BYTES);
+        responses.add(new FakeResponse(HttpStatus.BAD_REQUEST));
+
+        try (ClientHttpResponse response = send(requestBody)) {
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        }
+        assertEquals(List.of(GZIP), sentEncodings); // not about the compression, so not sent again
+
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.set(HttpHeaders.ACCEPT_ENCODING, "identity");
+        responses.clear();
+        responses.add(new FakeResponse(HttpStatus.BAD_REQUEST, responseHeaders, new byte[0]));
+        responses.add(new FakeResponse(HttpStatus.OK));
+
+        send(requestBody).close();
+        assertEquals(GZIP, sentEncodings.get(1));
+        assertNull(sentEncodings.get(2));
+    }
+
+    @Test
+    void isRejectedTest() {
+        assertTrue(GzipCodec.isRejected(415, null));
+        assertFalse(GzipCodec.isRejected(400, null));
+        assertFalse(GzipCodec.isRejected(400, "gzip, deflate"));
+        assertTrue(GzipCodec.isRejected(400, "identity"));
+        assertFalse(GzipCodec.isRejected(500, "identity"));
+    }
+
+    private static class FakeRequest implements HttpRequest {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        @Override
+        public HttpMethod getMethod() {
+            return HttpMethod.POST;
+        }
+
+        @Override
+        public URI getURI() {
+            return URI.create("http://localhost/notes");
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static class FakeResponse implements ClientHttpResponse {
+
+        private final HttpStatusCode statusCode;
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        FakeResponse(HttpStatusCode statusCode) {
+            this(statusCode, new HttpHeaders(), new byte[0]);
+        }
+
+        FakeResponse(HttpStatusCode statusCode, HttpHeaders headers, byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getStatusText() {
+            return statusCode.toString();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import static com.jc.jnotes.dao.remote.GzipCodec.GZIP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.jc.jnotes.dao.DaoRuntimeException;
+import com.jc.jnotes.model.NoteEntry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpClientRemoteNoteEntryDaoTest {
+
+    private static final long READ_TIMEOUT_MILLIS = 500;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private HttpClientRemoteNoteEntryDao dao;
+
+    // Body of the last /backupNotes request, uncompressed, handed back by /getUserNotes
+    private volatile byte[] storedNotes = new byte[0];
+    private final List<String> requestEncodings = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/backupNotes", (exchange) -> {
+            String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            synchronized (requestEncodings) {
+                requestEncodings.add(String.valueOf(contentEncoding));
+            }
+            InputStream body = exchange.getRequestBody();
+            storedNotes = (GZIP.equals(contentEncoding) ? new GZIPInputStream(body) : body).readAllBytes();
+            reply(exchange, new byte[0]);
+        });
+        server.createContext("/getUserNotes", (exchange) -> reply(exchange, storedNotes));
+        server.createContext("/editNote", (exchange) -> {
+            try {
+                Thread.sleep(READ_TIMEOUT_MILLIS * 4);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            reply(exchange, new byte[0]);
+        });
+        server.start();
+        String baseUrl = "http://localhost:" + server.getAddress().getPort();
+        dao = new HttpClientRemoteNoteEntryDao(baseUrl, "user", "secret", READ_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    // Compresses the reply when the client accepts it
+    private static void reply(HttpExchange exchange, byte[] body) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (body.length > 0 && acceptEncoding != null && acceptEncoding.contains(GZIP)) {
+            body = GzipCodec.compress(body);
+            exchange.getResponseHeaders().set("Content-Encoding", GZIP);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static List<NoteEntry> noteEntries(int count) {
+        List<NoteEntry> noteEntries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            noteEntries.add(new NoteEntry("notebook", "id" + i, "key" + i, "value" + i, "info" + i, "N"));
+        }
+        return noteEntries;
+    }
+
+    private static List<String> ids(List<NoteEntry> noteEntries) {
+        return noteEntries.stream().map(NoteEntry::getId).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void compressedRoundTripTest() {
+        List<NoteEntry> noteEntries = noteEntries(50);
+
+        dao.backup(noteEntries);
+        List<NoteEntry> read = dao.getAll("notebook");
+
+        assertEquals(List.of(GZIP), requestEncodings);
+        assertEquals(ids(noteEntries), ids(read));
+        assertEquals("value7", read.stream().filter((noteEntry) -> noteEntry.getId().equals("id7")).findFirst().get().getValue());
+
+        List<NoteEntry> restored = new ArrayList<>();
+        dao.restore(20, (notebook, batch) -> restored.addAll(batch), (progress) -> {
+        });
+        assertEquals(ids(noteEntries), ids(restored));
+
+        TransferStats transferStats = dao.getTransferStats();
+        assertTrue(transferStats.getBytesSent() < transferStats.getRawBytesSent(), transferStats.toString());
+        assertTrue(transferStats.getBytesReceived() < transferStats.getRawBytesReceived(), transferStats.toString());
+    }
+
+    @Test
+    void smallRequestIsNotCompressedTest() {
+        dao.backup(noteEntries(1));
+
+        assertEquals(List.of("null"), requestEncodings);
+        assertEquals(List.of("id0"), ids(dao.getAll("notebook")));
+    }
+
+    @Test
+    void readTimeoutTest() {
+        long start = System.currentTimeMillis();
+
+        DaoRuntimeException ex = assertThrows(DaoRuntimeException.class, () -> dao.editNoteEntry(noteEntries(1).get(0)));
+
+        assertTrue(ex.getCause() instanceof HttpTimeoutException, String.valueOf(ex.getCause()));
+        assertTrue(System.currentTimeMillis() - start < READ_TIMEOUT_MILLIS * 4);
+    }
+
+}
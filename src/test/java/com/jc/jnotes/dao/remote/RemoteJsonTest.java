@@ -0,0 +1,88 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.dao.remote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jc.jnotes.model.NoteEntry;
+
+public class RemoteJsonTest {
+
+    private final ObjectMapper objectMapper = RemoteJson.createObjectMapper();
+    private final List<String> batches = new ArrayList<>();
+    private final List<Long> progress = new ArrayList<>();
+
+    private void read(String json, int batchSize) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            RemoteJson.readNoteEntries(objectMapper, parser, json.length(), () -> parser.currentLocation().getCharOffset(),
+                    batchSize, (notebook, noteEntries) -> batches.add(
+                            notebook + ":" + noteEntries.stream().map(NoteEntry::getId).collect(Collectors.joining(","))),
+                    progress::add);
+        }
+    }
+
+    private String toJson(NoteEntry... noteEntries) throws IOException {
+        return objectMapper.writeValueAsString(noteEntries);
+    }
+
+    private static NoteEntry noteEntry(String notebook, String id) {
+        return new NoteEntry(notebook, id, "key", "value", "info", "N");
+    }
+
+    @Test
+    void emptyTest() throws IOException {
+        read("", 2);
+        read("{\"noteEntries\":[]}", 2);
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void partialLastBatchTest() throws IOException {
+        String noteEntries = toJson(noteEntry("a", "a1"), noteEntry("b", "b1"), noteEntry("a", "a2"), noteEntry("a", "a3"),
+                noteEntry("a", "a4"), noteEntry("a", "a5"));
+        read("{\"userId\":\"user\",\"noteEntries\":" + noteEntries + "}", 2);
+
+        // full batches as soon as they are read, the partial ones at the end
+        assertEquals(List.of("a:a1,a2", "a:a3,a4"), batches.subList(0, 2));
+        assertEquals(List.of("a:a5", "b:b1"), batches.subList(2, 4).stream().sorted().collect(Collectors.toList()));
+        assertTrue(progress.stream().allMatch((percent) -> percent < 100));
+    }
+
+    @Test
+    void malformedTest() throws IOException {
+        String noteEntries = toJson(noteEntry("a", "a1"), noteEntry("a", "a2"), noteEntry("a", "a3"));
+        String json = "{\"noteEntries\":" + noteEntries.substring(0, noteEntries.lastIndexOf('{')) + "{\"id\":}]}";
+
+        assertThrows(IOException.class, () -> read(json, 2));
+        // the batches read before the error have been handed over, the partial one is dropped
+        assertEquals(List.of("a:a1,a2"), batches);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.StringProperty;
+
+public class NoteEntryTest {
+
+    @Test
+    void propertiesFollowPlainValues() {
+        LocalDateTime modified = LocalDateTime.of(2020, 1, 1, 10, 0);
+        NoteEntry noteEntry = new NoteEntry("default", "id1", "key1", "value1", "info1", "N", modified);
+        noteEntry.setKey("key2");
+
+        StringProperty keyProperty = noteEntry.keyProperty();
+        assertEquals("key2", keyProperty.get());
+        noteEntry.setKey("key3");
+        assertEquals("key3", keyProperty.get());
+        keyProperty.set("key4");
+        assertEquals("key4", noteEntry.getKey());
+    }
+
+    @Test
+    void displayValueFollowsValueAndPasswordFlag() {
+        NoteEntry noteEntry = new NoteEntry("default", "id1", "key1", "secret", "info1", "N");
+        ReadOnlyStringProperty displayValue = noteEntry.displayValueProperty();
+        assertEquals("secret", displayValue.get());
+
+        noteEntry.setPasswordFlag("Y");
+        assertEquals("******", displayValue.get());
+        noteEntry.setValue("abc");
+        assertEquals("***", displayValue.get());
+        assertEquals("abc", noteEntry.getValue());
+    }
+
+    @Test
+    void infoIsReadOnFirstAccess() {
+        NoteEntry noteEntry = new NoteEntry("default", "id1", "key1", "value1", null, "N");
+        noteEntry.setInfoLoader(() -> "loaded");
+        assertEquals("loaded", noteEntry.infoProperty().get());
+        assertEquals("loaded", noteEntry.getInfo());
+    }
+
+    @Test
+    void idBytesRoundTrip() {
+        String uuid = NoteEntry.generateID();
+        // 16 UTF-8 bytes, must not be read back as a UUID
+        for (String id : List.of(uuid, "id1", "0123456789abcdef", uuid.toUpperCase())) {
+            NoteEntry noteEntry = new NoteEntry("default", id, "key1", "value1", "info1", "N");
+            byte[] idBytes = noteEntry.getIdBytes();
+            assertArrayEquals(NoteEntry.toIdBytes(id), idBytes);
+
+            NoteEntry readBack = new NoteEntry("default", null, "key1", "value1", "info1", "N");
+            readBack.setIdBytes(idBytes, 0, idBytes.length);
+            assertEquals(id, readBack.getId());
+            assertEquals(noteEntry, readBack);
+            assertEquals(noteEntry.hashCode(), readBack.hashCode());
+        }
+        assertEquals(16, NoteEntry.toIdBytes(uuid).length);
+    }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.service;
+
+import static com.jc.jnotes.JNotesConstants.LOCAL_STORE_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.jc.jnotes.UserPreferences;
+import com.jc.jnotes.dao.local.LocalNoteEntryDao;
+import com.jc.jnotes.dao.local.lucene.LuceneNoteEntryDao;
+import com.jc.jnotes.dao.remote.RemoteNoteEntryDao;
+import com.jc.jnotes.dao.remote.TransferStats;
+import com.jc.jnotes.helper.IOHelper;
+import com.jc.jnotes.model.NoteEntry;
+
+public class ControllerServiceTest {
+
+    private static final String FAILING_NOTEBOOK = "b";
+    private static final List<String> NOTEBOOKS = List.of("a", FAILING_NOTEBOOK, "c");
+
+    private Path basePath;
+    private UserPreferences userPreferences;
+    private final Map<String, LocalNoteEntryDao> localDaos = new ConcurrentHashMap<>();
+    private final FakeRemoteNoteEntryDao remoteDao = new FakeRemoteNoteEntryDao();
+    private ControllerService service;
+
+    @BeforeEach
+    void createNotebooks() throws IOException {
+        basePath = Files.createTempDirectory("JNotesServiceTest");
+        for (String notebook : NOTEBOOKS) {
+            localDaos.put(notebook, new LuceneNoteEntryDao(basePath.toString(), LOCAL_STORE_NAME, notebook));
+        }
+        userPreferences = new UserPreferences(basePath.toString());
+        service = new ControllerService(userPreferences, null, null, new IOHelper(userPreferences)) {
+
+            @Override
+            public LocalNoteEntryDao getLocalNoteEntryDao(String notebook) {
+                return localDaos.get(notebook);
+            }
+
+            @Override
+            public RemoteNoteEntryDao getRemoteNoteEntryDao(String userId, String userSecret) {
+                return remoteDao;
+            }
+        };
+    }
+
+    @AfterEach
+    void deleteNotebooks() throws IOException {
+        localDaos.values().forEach(LocalNoteEntryDao::close);
+        FileUtils.deleteDirectory(basePath.toFile());
+    }
+
+    @Test
+    void backupReportsFailedNotebookAndBacksUpTheOthersTest() {
+        for (String notebook : NOTEBOOKS) {
+            localDaos.get(notebook).addNoteEntry(new NoteEntry(notebook, notebook + "1", "key", "value", "info", "N"));
+        }
+        remoteDao.failingNotebook = FAILING_NOTEBOOK;
+        List<Long> progress = new ArrayList<>();
+
+        ControllerServiceException exception = assertThrows(ControllerServiceException.class, () -> service.backup(progress::add));
+
+        assertTrue(exception.getMessage().endsWith(": " + FAILING_NOTEBOOK), exception.getMessage());
+        assertEquals(List.of("a1"), remoteDao.getIds("a"));
+        assertEquals(List.of("c1"), remoteDao.getIds("c"));
+        assertNotEquals(0, localDaos.get("a").getLastSyncedMillis());
+        assertNotEquals(0, localDaos.get("c").getLastSyncedMillis());
+        assertEquals(0, localDaos.get(FAILING_NOTEBOOK).getLastSyncedMillis());
+        assertEquals(100L, progress.get(progress.size() - 1));
+    }
+
+    @Test
+    void restoreReportsFailedNotebookAndRestoresTheOthersTest() {
+        for (String notebook : NOTEBOOKS) {
+            remoteDao.backup(List.of(new NoteEntry(notebook, notebook + "1", "key", "value", "info", "N"),
+                    new NoteEntry(notebook, notebook + "2", "key", "value", "info", "N")));
+        }
+        localDaos.get(FAILING_NOTEBOOK).close(); // writes to it now fail
+
+        ControllerServiceException exception = assertThrows(ControllerServiceException.class, () -> service.restore(null));
+
+        assertTrue(exception.getMessage().endsWith(": " + FAILING_NOTEBOOK), exception.getMessage());
+        assertEquals(2, localDaos.get("a").getAll("a").size());
+        assertEquals(2, localDaos.get("c").getAll("c").size());
+    }
+
+    @Test
+    void backupAfterRestoreSendsOnlyNewWritesTest() throws ControllerServiceException {
+        for (String notebook : NOTEBOOKS) {
+            remoteDao.backup(List.of(new NoteEntry(notebook, notebook + "1", "key", "value", "info", "N")));
+        }
+        localDaos.get("a").addNoteEntry(new NoteEntry("a", "a0", "key", "value", "info", "N")); // a is not empty
+
+        service.restore(null);
+        localDaos.get("c").addNoteEntry(new NoteEntry("c", "c2", "key", "value", "info", "N"));
+        remoteDao.backedUp.clear();
+        service.backup(null);
+
+        assertNotEquals(0, localDaos.get("a").getLastSyncedMillis());
+        // a had notes of its own so it is replaced as a whole, b and c match the remote store since the restore
+        assertEquals(List.of("a0", "a1", "c2"), remoteDao.backedUp.stream().sorted().collect(Collectors.toList()));
+        assertEquals(List.of("a0", "a1"), remoteDao.getIds("a"));
+        assertEquals(List.of("c1", "c2"), remoteDao.getIds("c"));
+    }
+
+    @Test
+    void firstBackupDeletesOnlyRemoteNotesOfTheSameNotebookTest() throws ControllerServiceException {
+        remoteDao.backup(List.of(new NoteEntry("a", "a1", "key", "value", "info", "N"),
+                new NoteEntry("d", "d1", "key", "value", "info", "N"))); // d is not a local notebook
+        localDaos.get("a").addNoteEntry(new NoteEntry("a", "a0", "key", "value", "info", "N"));
+        remoteDao.ignoresNotebooks = true;
+
+        service.backup(null);
+
+        assertEquals(List.of("a0"), remoteDao.getIds("a"));
+        assertEquals(List.of("d1"), remoteDao.getIds("d"));
+    }
+
+    @Test
+    void remoteWritesAreSentInOrderAndFailuresReportedTest() throws ControllerServiceException {
+        boolean wasConnected = userPreferences.isConnected();
+        userPreferences.setConnected(true);
+        try {
+            List<String> failures = new CopyOnWriteArrayList<>();
+            service.addRemoteFailureListener(failures::add);
+            remoteDao.deferWrites = true;
+
+            service.editNoteEntry(new NoteEntry("a", "a1", "key", "v1", "info", "N"));
+            service.editNoteEntry(new NoteEntry("a", "a1", "key", "v2", "info", "N"));
+            service.editNoteEntry(new NoteEntry("c", "c1", "key", "v3", "info", "N"));
+            // v2 waits for v1, c is not held back by a
+            assertEquals(List.of("v1", "v3"), remoteDao.sentValues);
+
+            remoteDao.deferredWrites.get(0).completeExceptionally(new IllegalStateException("Remote store is down"));
+            assertEquals(List.of("v1", "v3", "v2"), remoteDao.sentValues);
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(0).startsWith("Failed to update Note remotely"), failures.get(0));
+
+            remoteDao.deferredWrites.forEach((write) -> write.complete(null));
+            assertEquals(1, failures.size());
+        } finally {
+            userPreferences.setConnected(wasConnected);
+        }
+    }
+
+    @Test
+    void queuedRemoteWriteSendsTheNoteAsItWasSavedTest() throws ControllerServiceException {
+        boolean wasConnected = userPreferences.isConnected();
+        userPreferences.setConnected(true);
+        try {
+            remoteDao.deferWrites = true;
+            NoteEntry noteEntry = new NoteEntry("a", "a1", "key", "v1", "info", "N");
+
+            service.editNoteEntry(noteEntry);
+            noteEntry.setValue("v2");
+            service.editNoteEntry(noteEntry);
+            // Edited again in the UI while the saved v2 is still queued behind v1
+            noteEntry.setValue("v3");
+
+            remoteDao.deferredWrites.get(0).complete(null);
+            assertEquals(List.of("v1", "v2"), remoteDao.sentValues);
+            remoteDao.deferredWrites.forEach((write) -> write.complete(null));
+        } finally {
+            userPreferences.setConnected(wasConnected);
+        }
+    }
+
+    /**
+     * Keeps the notes in memory, backup of failingNotebook throws. With deferWrites, the ...Async edits are only
+     * recorded and complete when the test completes them. With ignoresNotebooks, getAll returns the notes of all
+     * notebooks and deletes match by id alone.
+     */
+    private static class FakeRemoteNoteEntryDao implements RemoteNoteEntryDao {
+
+        private final Map<String, Map<String, NoteEntry>> noteEntriesByNotebook = new ConcurrentHashMap<>();
+        private volatile String failingNotebook;
+        private final List<String> backedUp = new CopyOnWriteArrayList<>();
+        private volatile boolean deferWrites;
+        private volatile boolean ignoresNotebooks;
+        private final List<String> sentValues = new CopyOnWriteArrayList<>();
+        private final List<CompletableFuture<Void>> deferredWrites = new CopyOnWriteArrayList<>();
+
+        private Map<String, NoteEntry> notebook(String notebook) {
+            return noteEntriesByNotebook.computeIfAbsent(notebook, (key) -> new ConcurrentHashMap<>());
+        }
+
+        List<String> getIds(String notebook) {
+            return notebook(notebook).keySet().stream().sorted().collect(Collectors.toList());
+        }
+
+        @Override
+        public List<NoteEntry> getAll(String notebook) {
+            if (ignoresNotebooks) {
+                return noteEntriesByNotebook.values().stream().flatMap((noteEntries) -> noteEntries.values().stream())
+                        .collect(Collectors.toList());
+            }
+            return new ArrayList<>(notebook(notebook).values());
+        }
+
+        @Override
+        public void addNoteEntry(NoteEntry noteEntry) {
+            backup(List.of(noteEntry));
+        }
+
+        @Override
+        public void editNoteEntry(NoteEntry noteEntry) {
+            backup(List.of(noteEntry));
+        }
+
+        @Override
+        public CompletableFuture<Void> editNoteEntryAsync(NoteEntry noteEntry) {
+            if (!deferWrites) {
+                return RemoteNoteEntryDao.super.editNoteEntryAsync(noteEntry);
+            }
+            sentValues.add(noteEntry.getValue());
+            CompletableFuture<Void> write = new CompletableFuture<>();
+            deferredWrites.add(write);
+            return write;
+        }
+
+        @Override
+        public void deleteNoteEntry(NoteEntry noteEntry) {
+            deleteNoteEntries(List.of(noteEntry));
+        }
+
+        @Override
+        public void deleteNoteEntries(List<NoteEntry> noteEntries) {
+            if (ignoresNotebooks) {
+                noteEntries.forEach((noteEntry) -> noteEntriesByNotebook.values().forEach((notebook) -> notebook.remove(noteEntry.getId())));
+            } else {
+                noteEntries.forEach((noteEntry) -> notebook(noteEntry.getNotebook()).remove(noteEntry.getId()));
+            }
+        }
+
+        @Override
+        public boolean setupUser(String userId) {
+            return true;
+        }
+
+        @Override
+        public void backup(List<NoteEntry> noteEntries) {
+            for (NoteEntry noteEntry : noteEntries) {
+                if (noteEntry.getNotebook().equals(failingNotebook)) {
+                    throw new IllegalStateException("Backup of " + failingNotebook + " failed");
+                }
+                notebook(noteEntry.getNotebook()).put(noteEntry.getId(), noteEntry);
+                backedUp.add(noteEntry.getId());
+            }
+        }
+
+        @Override
+        public void deleteNotebook(String notebookToBeDeleted) {
+            noteEntriesByNotebook.remove(notebookToBeDeleted);
+        }
+
+        @Override
+        public void renameNotebook(String notebookToBeRenamed, String notebookNewName) {
+            noteEntriesByNotebook.put(notebookNewName, noteEntriesByNotebook.remove(notebookToBeRenamed));
+        }
+
+        @Override
+        public int validateUserSecret() {
+            return 0;
+        }
+
+        @Override
+        public Map<String, List<NoteEntry>> restore() {
+            return noteEntriesByNotebook.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, (entry) -> new ArrayList<>(entry.getValue().values())));
+        }
+
+        @Override
+        public TransferStats getTransferStats() {
+            return new TransferStats(0, 0, 0, 0);
+        }
+
+        @Override
+        public void restore(int batchSize, BiConsumer<String, List<NoteEntry>> batchConsumer, Consumer<Long> progressConsumer) {
+            // one entry per batch, so the failing notebook has batches after its first failure
+            restore().forEach((notebook, noteEntries) -> noteEntries.forEach((noteEntry) -> batchConsumer.accept(notebook,
+                    List.of(noteEntry))));
+        }
+    }
+
+}
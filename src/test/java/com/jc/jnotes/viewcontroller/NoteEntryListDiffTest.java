@@ -0,0 +1,96 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.viewcontroller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.jc.jnotes.model.NoteEntry;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+public class NoteEntryListDiffTest {
+
+    private static final LocalDateTime MODIFIED = LocalDateTime.of(2020, 1, 1, 10, 0);
+
+    private static NoteEntry noteEntry(String id) {
+        NoteEntry noteEntry = new NoteEntry("default", id, "key" + id, "value" + id, "info" + id, "N");
+        noteEntry.setLastModifiedTime(MODIFIED);
+        return noteEntry;
+    }
+
+    @Test
+    void narrowedResultsAreRemovedInOneChange() {
+        NoteEntry a = noteEntry("a");
+        NoteEntry b = noteEntry("b");
+        NoteEntry c = noteEntry("c");
+        ObservableList<NoteEntry> current = FXCollections.observableArrayList(a, b, c);
+        List<Integer> changes = new ArrayList<>();
+        current.addListener((ListChangeListener<NoteEntry>) (change) -> changes.add(1));
+
+        NoteEntryListDiff.apply(current, List.of(noteEntry("a"), noteEntry("c")));
+
+        assertEquals(List.of(a, c), current);
+        assertSame(a, current.get(0)); // unchanged notes stay the same objects
+        assertSame(c, current.get(1));
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    void insertsMovesAndUpdates() {
+        NoteEntry a = noteEntry("a");
+        NoteEntry b = noteEntry("b");
+        NoteEntry c = noteEntry("c");
+        ObservableList<NoteEntry> current = FXCollections.observableArrayList(a, b, c);
+
+        NoteEntry editedB = noteEntry("b");
+        editedB.setKey("edited");
+        List<NoteEntry> updated = List.of(noteEntry("d"), c, editedB, noteEntry("a"));
+        NoteEntryListDiff.apply(current, updated);
+
+        assertEquals(updated, current);
+        assertSame(editedB, current.get(2));
+        assertSame(a, current.get(3));
+    }
+
+    @Test
+    void manyChangesAreSetAtOnce() {
+        ObservableList<NoteEntry> current = FXCollections.observableArrayList(noteEntry("a"));
+        List<NoteEntry> updated = new ArrayList<>();
+        for (int i = 0; i <= NoteEntryListDiff.MAX_SINGLE_CHANGES; i++) {
+            updated.add(noteEntry("n" + i));
+        }
+        List<Integer> changes = new ArrayList<>();
+        current.addListener((ListChangeListener<NoteEntry>) (change) -> changes.add(1));
+
+        NoteEntryListDiff.apply(current, updated);
+
+        assertEquals(updated, current);
+        assertEquals(1, changes.size());
+    }
+
+}
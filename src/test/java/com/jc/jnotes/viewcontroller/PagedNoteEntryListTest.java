@@ -0,0 +1,131 @@
+/*
+ * This file is part of JNotes. Copyright (C) 2020  Joy Chakravarty
+ *
+ * JNotes is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JNotes is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JNotes.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.jc.jnotes.viewcontroller;
+
+import static com.jc.jnotes.JNotesConstants.LOCAL_STORE_NAME;
+import static com.jc.jnotes.JNotesConstants.NOTES_TABLE_PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.jc.jnotes.UserPreferences;
+import com.jc.jnotes.dao.local.LocalNoteEntryDao;
+import com.jc.jnotes.dao.local.NoteEntryPage;
+import com.jc.jnotes.dao.local.lucene.LuceneNoteEntryDao;
+import com.jc.jnotes.helper.IOHelper;
+import com.jc.jnotes.model.NoteEntry;
+import com.jc.jnotes.service.ControllerService;
+
+public class PagedNoteEntryListTest {
+
+    private static final String NOTEBOOK = "paged";
+    private static final int NOTE_COUNT = NOTES_TABLE_PAGE_SIZE * 2 + NOTES_TABLE_PAGE_SIZE / 2;
+
+    private Path basePath;
+    private LuceneNoteEntryDao dao;
+    private ControllerService service;
+    // Each page read from the Dao: "after" if read from a previous page's end, then the number of entries skipped
+    private final List<String> pageReads = new ArrayList<>();
+
+    @BeforeEach
+    void createNotebook() throws IOException {
+        basePath = Files.createTempDirectory("JNotesPagedTest");
+        dao = new LuceneNoteEntryDao(basePath.toString(), LOCAL_STORE_NAME, NOTEBOOK) {
+
+            @Override
+            public NoteEntryPage getPage(NoteEntryPage previousPage, int offset, int pageSize, boolean oldestFirst) {
+                pageReads.add((previousPage == null ? "first" : "after") + " " + offset);
+                return super.getPage(previousPage, offset, pageSize, oldestFirst);
+            }
+        };
+        List<NoteEntry> noteEntries = new ArrayList<>();
+        for (int i = 0; i < NOTE_COUNT; i++) {
+            NoteEntry noteEntry = new NoteEntry(NOTEBOOK, NoteEntry.generateID(), "key" + i, "value" + i, "info" + i, "N");
+            noteEntry.setLastModifiedMillis(1_000_000L + i * 1000L); // key0 is the oldest
+            noteEntries.add(noteEntry);
+        }
+        dao.addNoteEntries(noteEntries);
+        UserPreferences userPreferences = new UserPreferences(basePath.toString());
+        service = new ControllerService(userPreferences, null, null, new IOHelper(userPreferences)) {
+
+            @Override
+            public LocalNoteEntryDao getLocalNoteEntryDao(String notebook) {
+                return dao;
+            }
+        };
+    }
+
+    @AfterEach
+    void deleteNotebook() throws IOException {
+        dao.close();
+        FileUtils.deleteDirectory(basePath.toFile());
+    }
+
+    private static List<String> keys(List<NoteEntry> noteEntries) {
+        List<String> keys = new ArrayList<>();
+        noteEntries.forEach((noteEntry) -> keys.add(noteEntry.getKey()));
+        return keys;
+    }
+
+    @Test
+    void oldestFirstIsReadForwardTest() {
+        PagedNoteEntryList list = new PagedNoteEntryList(service, NOTEBOOK, true);
+
+        assertEquals(NOTE_COUNT, list.size());
+        List<String> expectedKeys = new ArrayList<>();
+        for (int i = 0; i < NOTE_COUNT; i++) {
+            expectedKeys.add("key" + i);
+        }
+        assertEquals(expectedKeys, keys(list));
+        assertEquals(List.of("first 0", "after 0", "after 0"), pageReads);
+    }
+
+    @Test
+    void latestFirstIsReadForwardTest() {
+        PagedNoteEntryList list = new PagedNoteEntryList(service, NOTEBOOK, false);
+
+        List<String> expectedKeys = new ArrayList<>();
+        for (int i = NOTE_COUNT - 1; i >= 0; i--) {
+            expectedKeys.add("key" + i);
+        }
+        assertEquals(expectedKeys, keys(list));
+        assertEquals(List.of("first 0", "after 0", "after 0"), pageReads);
+    }
+
+    @Test
+    void jumpSkipsFromTheNearestPageReadTest() {
+        PagedNoteEntryList list = new PagedNoteEntryList(service, NOTEBOOK, true);
+
+        assertEquals("key0", list.get(0).getKey());
+        assertEquals("key" + (NOTE_COUNT - 1), list.get(NOTE_COUNT - 1).getKey());
+        assertEquals("key" + NOTES_TABLE_PAGE_SIZE, list.get(NOTES_TABLE_PAGE_SIZE).getKey());
+
+        assertEquals(List.of("first 0", "after " + NOTES_TABLE_PAGE_SIZE, "after 0"), pageReads);
+    }
+
+}